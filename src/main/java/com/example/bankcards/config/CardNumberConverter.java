@@ -4,21 +4,45 @@ import jakarta.annotation.PostConstruct;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 
+// Номер карты в БД: [v<id>:]base64(iv || ciphertext+tag).
+// Версия ключа в префиксе позволяет менять ключ без единовременной перезаписи таблицы:
+// новые записи шифруются активным ключом, старые читаются своим, а CardReencryptionJob
+// постепенно переводит их на активный. Без префикса — ключ encrypt.secret (версия 0).
 @Converter
+@Component
 public class CardNumberConverter implements AttributeConverter<String, String> {
 
     @Value("${encrypt.secret}")
     private String KEY_B64;
 
-    private byte[] KEY; // 32 bytes
+    // дополнительные ключи: "1:<base64>,2:<base64>" (ENCRYPT_KEYS)
+    @Value("${encrypt.keys:}")
+    private String keysSpec = "";
+
+    // версия ключа для новых записей; 0 — encrypt.secret без префикса
+    @Value("${encrypt.active-key:0}")
+    private int activeKey = 0;
+
+    // false — все старые plain-text номера уже зашифрованы: не проверяем «похоже ли на base64»,
+    // а ошибку расшифровки не маскируем
+    @Value("${encrypt.legacy-plaintext:true}")
+    private boolean legacyPlaintext = true;
+
+    private final Map<Integer, SecretKeySpec> keys = new HashMap<>();
+    private String activePrefix;
     private static final String ALG = "AES";
     private static final String TR = "AES/GCM/NoPadding";
     private static final int GCM_TAG_LEN = 128; // bits
@@ -26,30 +50,76 @@ public class CardNumberConverter implements AttributeConverter<String, String> {
 
     private static final SecureRandom RNG = new SecureRandom();
 
+    // Cipher не потокобезопасен, а Cipher.getInstance дорогой — держим по одному на поток.
+    // init с новым IV перед каждой операцией сбрасывает состояние.
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TR);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(TR + " is not available", e);
+        }
+    });
+
     @PostConstruct
     public void init() {
         if (KEY_B64 == null || KEY_B64.isBlank()) {
             throw new IllegalStateException("ENCRYPT_SECRET is not set — please configure encrypt.secret in application.yml or environment");
         }
-        KEY = Base64.getDecoder().decode(KEY_B64);
-        if (KEY.length != 32) {
-            throw new IllegalStateException("ENCRYPT_SECRET must be a base64-encoded 256-bit key (32 bytes after decoding)");
+        keys.put(0, key(KEY_B64, "ENCRYPT_SECRET"));
+        if (keysSpec != null && !keysSpec.isBlank()) {
+            for (String entry : keysSpec.split(",")) {
+                int colon = entry.indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalStateException("encrypt.keys entries must look like <id>:<base64 key>");
+                }
+                int id = Integer.parseInt(entry.substring(0, colon).trim());
+                if (id <= 0) {
+                    throw new IllegalStateException("encrypt.keys ids must be positive (0 is encrypt.secret)");
+                }
+                keys.put(id, key(entry.substring(colon + 1).trim(), "encrypt.keys[" + id + "]"));
+            }
+        }
+        if (!keys.containsKey(activeKey)) {
+            throw new IllegalStateException("encrypt.active-key " + activeKey + " is not configured");
         }
+        activePrefix = activeKey == 0 ? "" : "v" + activeKey + ":";
     }
 
+    private static SecretKeySpec key(String b64, String name) {
+        byte[] key = Base64.getDecoder().decode(b64);
+        if (key.length != 32) {
+            throw new IllegalStateException(name + " must be a base64-encoded 256-bit key (32 bytes after decoding)");
+        }
+        return new SecretKeySpec(key, ALG);
+    }
+
+    public int getActiveKey() {
+        return activeKey;
+    }
+
+    // значение из БД уже зашифровано активным ключом (перешифровка не нужна)
+    public boolean isCurrent(String dbData) {
+        if (dbData == null || dbData.isBlank()) return true;
+        int version = version(dbData);
+        if (version < 0) return false;
+        if (version != activeKey) return false;
+        return version != 0 || looksLikeBase64(dbData);
+    }
 
     @Override
     public String convertToDatabaseColumn(String plaintext) {
         if (plaintext == null || plaintext.isBlank()) return plaintext;
         try {
+            byte[] pt = plaintext.getBytes(StandardCharsets.UTF_8);
             byte[] iv = new byte[IV_LEN];
             RNG.nextBytes(iv);
-            Cipher c = Cipher.getInstance(TR);
-            c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, ALG), new GCMParameterSpec(GCM_TAG_LEN, iv));
-            byte[] ct = c.doFinal(plaintext.getBytes());
-            ByteBuffer bb = ByteBuffer.allocate(iv.length + ct.length);
-            bb.put(iv).put(ct);
-            return Base64.getEncoder().encodeToString(bb.array());
+            Cipher c = CIPHER.get();
+            c.init(Cipher.ENCRYPT_MODE, keys.get(activeKey), new GCMParameterSpec(GCM_TAG_LEN, iv));
+            // [iv][ciphertext+tag] в одном массиве: шифруем сразу за IV, без промежуточного буфера
+            byte[] out = new byte[IV_LEN + pt.length + GCM_TAG_LEN / 8];
+            System.arraycopy(iv, 0, out, 0, IV_LEN);
+            c.doFinal(pt, 0, pt.length, out, IV_LEN);
+            return activePrefix + Base64.getEncoder().encodeToString(out);
         } catch (Exception e) {
             throw new IllegalStateException("Encrypt failed", e);
         }
@@ -59,26 +129,96 @@ public class CardNumberConverter implements AttributeConverter<String, String> {
     public String convertToEntityAttribute(String dbData) {
         if (dbData == null || dbData.isBlank()) return dbData;
 
+        int version = version(dbData);
+        if (version > 0) {
+            // версионированное значение — всегда шифротекст, legacy-эвристики не нужны
+            SecretKeySpec key = keys.get(version);
+            if (key == null) {
+                throw new IllegalStateException("Unknown card number key version " + version);
+            }
+            try {
+                return decrypt(key, Base64.getDecoder().decode(dbData.substring(dbData.indexOf(':') + 1)));
+            } catch (Exception e) {
+                throw new IllegalStateException("Decrypt failed", e);
+            }
+        }
+
         // 1) Если это не похоже на base64, значит это старый plain-text → вернём как есть
-        if (!looksLikeBase64(dbData)) return dbData;
+        if (legacyPlaintext && !looksLikeBase64(dbData)) return dbData;
 
         // 2) Похоже на base64 — пробуем расшифровать. Если не вышло, считаем это legacy/plain и тоже вернём как есть.
         try {
             byte[] all = Base64.getDecoder().decode(dbData);
-            if (all.length <= IV_LEN) return dbData;
-            byte[] iv = new byte[IV_LEN];
-            byte[] ct = new byte[all.length - IV_LEN];
-            System.arraycopy(all, 0, iv, 0, IV_LEN);
-            System.arraycopy(all, IV_LEN, ct, 0, ct.length);
-
-            Cipher c = Cipher.getInstance(TR);
-            c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(KEY, ALG), new GCMParameterSpec(GCM_TAG_LEN, iv));
-            byte[] pt = c.doFinal(ct);
-            return new String(pt);
-        } catch (Exception ignore) {
+            if (all.length <= IV_LEN) {
+                if (legacyPlaintext) return dbData;
+                throw new IllegalStateException("Ciphertext is too short");
+            }
+            return decrypt(keys.get(0), all);
+        } catch (Exception e) {
             // старые записи или сторонний формат — не рвём приложение
-            return dbData;
+            if (legacyPlaintext) return dbData;
+            throw new IllegalStateException("Decrypt failed", e);
+        }
+    }
+
+    // Строгое чтение для перешифровки: без legacy-эвристик convertToEntityAttribute.
+    // Как есть возвращается только заведомо открытый номер (16 цифр); всё остальное обязано
+    // расшифроваться своим ключом, иначе исключение — неверный ключ или битая строка не должны
+    // выдать шифротекст за номер карты
+    public String decryptStrict(String dbData) {
+        if (dbData == null || dbData.isBlank()) return dbData;
+        if (isPlainPan(dbData)) return dbData;
+        int version = version(dbData);
+        if (version < 0) {
+            throw new IllegalStateException("Malformed card number key prefix");
+        }
+        SecretKeySpec key = keys.get(version);
+        if (key == null) {
+            throw new IllegalStateException("Unknown card number key version " + version);
+        }
+        try {
+            byte[] all = Base64.getDecoder().decode(version == 0 ? dbData : dbData.substring(dbData.indexOf(':') + 1));
+            if (all.length <= IV_LEN) {
+                throw new IllegalStateException("Ciphertext is too short");
+            }
+            return decrypt(key, all);
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Decrypt failed", e);
+        }
+    }
+
+    private static boolean isPlainPan(String s) {
+        if (s.length() != 16) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') return false;
+        }
+        return true;
+    }
+
+    // IV и шифротекст читаются по смещениям, без копирования
+    private static String decrypt(SecretKeySpec key, byte[] all) throws Exception {
+        Cipher c = CIPHER.get();
+        c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LEN, all, 0, IV_LEN));
+        int n = c.doFinal(all, IV_LEN, all.length - IV_LEN, all, 0);
+        return new String(all, 0, n, StandardCharsets.UTF_8);
+    }
+
+    // версия из префикса "v<id>:"; 0 — без префикса, -1 — префикс испорчен
+    private static int version(String s) {
+        if (s.length() < 3 || s.charAt(0) != 'v') return 0;
+        int colon = s.indexOf(':');
+        if (colon < 0) return 0; // base64 тоже может начинаться с 'v'
+        if (colon == 1 || colon > 10) return -1;
+        int v = 0;
+        for (int i = 1; i < colon; i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') return -1;
+            v = v * 10 + (ch - '0');
         }
+        return v;
     }
 
     private boolean looksLikeBase64(String s) {
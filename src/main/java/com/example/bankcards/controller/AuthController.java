@@ -2,6 +2,7 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.JwtResponse;
 import com.example.bankcards.dto.LoginRequest;
+import com.example.bankcards.security.AuthUser;
 import com.example.bankcards.security.JwtUtil;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.*;
@@ -25,7 +26,8 @@ public class AuthController {
     public ResponseEntity<JwtResponse> login(@RequestBody LoginRequest req) {
         Authentication auth = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(req.getUsername(), req.getPassword()));
-        String token = jwtUtil.generate(auth.getName());
+        AuthUser user = (AuthUser) auth.getPrincipal();
+        String token = jwtUtil.generate(user.getId(), user.getUsername(), user.getRole());
         return ResponseEntity.ok(new JwtResponse(token));
     }
 
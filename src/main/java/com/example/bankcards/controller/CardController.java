@@ -1,23 +1,36 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.CardSlice;
+import com.example.bankcards.dto.CardSummaryDto;
 import com.example.bankcards.dto.CreateCardRequest;
+import com.example.bankcards.dto.ReconcileReport;
 import com.example.bankcards.dto.TopUpRequest;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Last4Match;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthUser;
+import com.example.bankcards.service.BalanceEngine;
+import com.example.bankcards.service.CardAggregatesReconciler;
 import com.example.bankcards.service.CardService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.List;
 import java.util.UUID;
@@ -27,39 +40,97 @@ import java.util.UUID;
 public class CardController {
 
     private final CardService cardService;
+    private final BalanceEngine balanceEngine;
     private final UserRepository userRepository;
     private final CardRepository cardRepository;
+    private final ObjectMapper objectMapper;
+    private final CardAggregatesReconciler reconciler;
+
+    static final String NEXT_CURSOR = "X-Next-Cursor";
 
     public CardController(CardService cardService,
+                          BalanceEngine balanceEngine,
                           UserRepository userRepository,
-                          CardRepository cardRepository) {
+                          CardRepository cardRepository,
+                          ObjectMapper objectMapper,
+                          CardAggregatesReconciler reconciler) {
         this.cardService = cardService;
+        this.balanceEngine = balanceEngine;
         this.userRepository = userRepository;
         this.cardRepository = cardRepository;
+        this.objectMapper = objectMapper;
+        this.reconciler = reconciler;
     }
 
     // GET /api/cards
     // user: запросить свои карты (списком)
-    // admin: запросить все карты (списком)
+    // admin: запросить все карты страницами по id (after — курсор из X-Next-Cursor предыдущей страницы)
     @GetMapping
-    public ResponseEntity<List<CardDto>> all(Authentication auth) {
+    public ResponseEntity<List<CardDto>> all(Authentication auth,
+                                             @RequestParam(required = false) UUID after,
+                                             @RequestParam(defaultValue = "100") int size) {
         if (isAdmin(auth)) {
-            return ResponseEntity.ok(cardService.getAll());
+            CardSlice slice = cardService.getAllPage(after, size);
+            ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+            if (slice.getNextCursor() != null) {
+                ok.header(NEXT_CURSOR, slice.getNextCursor().toString());
+            }
+            return ok.body(slice.getItems());
         }
         UUID me = currentUserId(auth);
         return ResponseEntity.ok(cardService.getByUser(me));
     }
 
+    // GET /api/cards/stream - все карты одним JSON-массивом, который пишется по мере чтения из БД (admin)
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> stream() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+                gen.writeStartArray();
+                cardService.streamAll(dto -> {
+                    try {
+                        gen.writeObject(dto);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                gen.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // GET /api/cards/summary - число карт и сумма балансов по статусам
+    // user: по своим картам; admin: по всему банку или по пользователю (userId)
+    @GetMapping("/summary")
+    public ResponseEntity<CardSummaryDto> summary(Authentication auth, @RequestParam(required = false) UUID userId) {
+        if (!isAdmin(auth)) {
+            UUID me = currentUserId(auth);
+            if (userId != null && !userId.equals(me)) throw new AccessDeniedException("Forbidden");
+            return ResponseEntity.ok(cardService.summaryOf(me));
+        }
+        return ResponseEntity.ok(userId == null ? cardService.globalSummary() : cardService.summaryOf(userId));
+    }
+
+    // POST /api/cards/summary/reconcile - сверить агрегаты с cards, fix=true — исправить расхождения (admin)
+    @PostMapping("/summary/reconcile")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ReconcileReport> reconcile(@RequestParam(defaultValue = "false") boolean fix) {
+        return ResponseEntity.ok(reconciler.reconcile(fix));
+    }
+
     // GET /api/cards/my - запросить свои карты (пагинация)
     @GetMapping("/my")
     public ResponseEntity<org.springframework.data.domain.Page<CardDto>> myCards(
             Authentication auth,
             @RequestParam(required = false) CardStatus status,
             @RequestParam(required = false) String last4,
+            @RequestParam(required = false) Last4Match match,
             @ParameterObject @PageableDefault(sort = "expiryDate") Pageable pageable) {
 
         UUID me = currentUserId(auth);
-        return ResponseEntity.ok(cardService.getOwnPaged(me, status, last4, pageable));
+        return ResponseEntity.ok(cardService.getOwnPaged(me, status, last4, match, pageable));
     }
 
     // POST /api/cards/{cardId}/request-block - запросить блокировку карты
@@ -129,7 +200,7 @@ public class CardController {
                     .orElseThrow(() -> new IllegalArgumentException("Card not found"));
             if (!c.getOwner().getId().equals(me)) throw new AccessDeniedException("Forbidden");
         }
-        cardService.topUp(cardId, req.getAmount());
+        balanceEngine.topUp(cardId, req.getAmount());
         return ResponseEntity.noContent().build();
     }
 
@@ -137,7 +208,8 @@ public class CardController {
     @DeleteMapping("/{cardId}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> delete(@PathVariable UUID cardId) {
-        boolean removed = cardService.delete(cardId);
+        // через движок балансов: при in-memory у карты могут быть ещё не записанные в БД операции
+        boolean removed = balanceEngine.deleteCard(cardId);
         return removed ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 
@@ -146,7 +218,10 @@ public class CardController {
                 .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
     }
 
+    // id из principal (claims токена); findByUsername — только для иных principal
     private UUID currentUserId(Authentication auth) {
+        UUID id = AuthUser.idOf(auth);
+        if (id != null) return id;
         return userRepository.findByUsername(auth.getName())
                 .map(User::getId)
                 .orElseThrow(() -> new AccessDeniedException("Unauthorized"));
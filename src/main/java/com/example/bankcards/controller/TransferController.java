@@ -1,72 +1,170 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransactionSlice;
 import com.example.bankcards.dto.TransferRequest;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthUser;
+import com.example.bankcards.service.BalanceEngine;
+import com.example.bankcards.service.ExportFormat;
+import com.example.bankcards.service.TransactionExportService;
 import com.example.bankcards.service.TransferService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/transfers")
 public class TransferController {
 
     private final TransferService transferService;
+    private final BalanceEngine balanceEngine;
     private final UserRepository userRepository;
     private final CardRepository cardRepository;
+    private final TransactionExportService exportService;
+
+    static final String NEXT_CURSOR = "X-Next-Cursor";
 
     public TransferController(TransferService transferService,
+                              BalanceEngine balanceEngine,
                               UserRepository userRepository,
-                              CardRepository cardRepository) {
+                              CardRepository cardRepository,
+                              TransactionExportService exportService) {
         this.transferService = transferService;
+        this.balanceEngine = balanceEngine;
         this.userRepository = userRepository;
         this.cardRepository = cardRepository;
+        this.exportService = exportService;
     }
 
     // POST /api/transfers - Перевод между своими картами
+    // владение картами проверяется в сервисе на заблокированных строках
     @PostMapping
     public ResponseEntity<TransactionDto> transfer(@RequestBody TransferRequest req, Authentication auth) {
         UUID me = currentUserId(auth);
         if (req.getOwnerId() == null || !me.equals(req.getOwnerId())) {
             throw new AccessDeniedException("Forbidden");
         }
-        // обе карты должны быть моими
-        Card from = cardRepository.findById(req.getFromCardId())
-                .orElseThrow(() -> new IllegalArgumentException("From card not found"));
-        Card to = cardRepository.findById(req.getToCardId())
-                .orElseThrow(() -> new IllegalArgumentException("To card not found"));
-        if (!from.getOwner().getId().equals(me) || !to.getOwner().getId().equals(me)) {
-            throw new AccessDeniedException("Forbidden");
+        return ResponseEntity.ok(balanceEngine.transfer(req));
+    }
+
+    // POST /api/transfers/batch - Пакетный перевод между своими картами (одна транзакция)
+    // владение картами проверяется в сервисе на заблокированных строках
+    @PostMapping("/batch")
+    public ResponseEntity<List<TransactionDto>> transferBatch(@RequestBody List<TransferRequest> reqs, Authentication auth) {
+        UUID me = currentUserId(auth);
+        if (reqs == null || reqs.isEmpty()) {
+            throw new IllegalArgumentException("At least one transfer is required");
+        }
+        for (TransferRequest r : reqs) {
+            if (r == null || r.getOwnerId() == null || !me.equals(r.getOwnerId())) {
+                throw new AccessDeniedException("Forbidden");
+            }
         }
-        return ResponseEntity.ok(transferService.transfer(req));
+        return ResponseEntity.ok(balanceEngine.transferBatch(me, reqs));
     }
 
-    // GET /api/transfers/card/{cardId} - История по карте
+    // GET /api/transfers/card/{cardId} - История по карте (от новых к старым, before — курсор из X-Next-Cursor)
     @GetMapping("/card/{cardId}")
-    public ResponseEntity<List<TransactionDto>> byCard(@PathVariable UUID cardId, Authentication auth) {
+    public ResponseEntity<List<TransactionDto>> byCard(@PathVariable UUID cardId,
+                                                       @RequestParam(required = false) UUID before,
+                                                       @RequestParam(defaultValue = "50") int size,
+                                                       Authentication auth) {
         if (isAdmin(auth)) {
             UUID me = currentUserId(auth);
             Card c = cardRepository.findById(cardId)
                     .orElseThrow(() -> new IllegalArgumentException("Card not found"));
             if (!c.getOwner().getId().equals(me)) throw new AccessDeniedException("Forbidden");
         }
-        return ResponseEntity.ok(transferService.getByCard(cardId));
+        return page(transferService.getByCard(cardId, before, size));
     }
 
-    // GET /api/transfers/user/{userId} - История по пользователю
+    // GET /api/transfers/user/{userId} - История по пользователю (от новых к старым, before — курсор из X-Next-Cursor)
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<TransactionDto>> byUser(@PathVariable UUID userId, Authentication auth) {
+    public ResponseEntity<List<TransactionDto>> byUser(@PathVariable UUID userId,
+                                                       @RequestParam(required = false) UUID before,
+                                                       @RequestParam(defaultValue = "50") int size,
+                                                       Authentication auth) {
+        if (isAdmin(auth) && !currentUserId(auth).equals(userId)) {
+            throw new AccessDeniedException("Forbidden");
+        }
+        return page(transferService.getByUser(userId, before, size));
+    }
+
+    // GET /api/transfers/card/{cardId}/export - Вся история по карте потоком (NDJSON или CSV, от старых к новым)
+    @GetMapping("/card/{cardId}/export")
+    public ResponseEntity<StreamingResponseBody> exportByCard(@PathVariable UUID cardId,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                              @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+                                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                              Authentication auth) {
+        if (isAdmin(auth)) {
+            UUID me = currentUserId(auth);
+            Card c = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new IllegalArgumentException("Card not found"));
+            if (!c.getOwner().getId().equals(me)) throw new AccessDeniedException("Forbidden");
+        }
+        return export(exportService.byCard(cardId, from, to), format, acceptEncoding);
+    }
+
+    // GET /api/transfers/user/{userId}/export - Вся история пользователя потоком (NDJSON или CSV, от старых к новым)
+    @GetMapping("/user/{userId}/export")
+    public ResponseEntity<StreamingResponseBody> exportByUser(@PathVariable UUID userId,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                              @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+                                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                              Authentication auth) {
         if (isAdmin(auth) && !currentUserId(auth).equals(userId)) {
             throw new AccessDeniedException("Forbidden");
         }
-        return ResponseEntity.ok(transferService.getByUser(userId));
+        return export(exportService.byUser(userId, from, to), format, acceptEncoding);
+    }
+
+    // тело пишется после возврата из метода; при Accept-Encoding: gzip сжимается на лету
+    private ResponseEntity<StreamingResponseBody> export(TransactionExportService.Export export,
+                                                         ExportFormat format, String acceptEncoding) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream zipped = new GZIPOutputStream(out, 16 * 1024);
+                exportService.write(export, format, zipped);
+                zipped.finish();
+            } else {
+                exportService.write(export, format, out);
+            }
+        };
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(export.getName() + "." + format.getExtension()).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) ok.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return ok.body(body);
+    }
+
+    private static ResponseEntity<List<TransactionDto>> page(TransactionSlice slice) {
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (slice.getNextCursor() != null) {
+            ok.header(NEXT_CURSOR, slice.getNextCursor().toString());
+        }
+        return ok.body(slice.getItems());
     }
 
     private static boolean isAdmin(Authentication auth) {
@@ -74,9 +172,12 @@ public class TransferController {
                 .noneMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
     }
 
+    // id из principal (claims токена); findByUsername — только для иных principal
     private UUID currentUserId(Authentication auth) {
+        UUID id = AuthUser.idOf(auth);
+        if (id != null) return id;
         return userRepository.findByUsername(auth.getName())
-                .map(u -> u.getId())
+                .map(User::getId)
                 .orElseThrow(() -> new AccessDeniedException("Unauthorized"));
     }
 }
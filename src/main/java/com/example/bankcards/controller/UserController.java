@@ -4,6 +4,7 @@ import com.example.bankcards.dto.RegisterRequest;
 import com.example.bankcards.dto.UserDto;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthUser;
 import com.example.bankcards.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -37,6 +38,15 @@ public class UserController {
         if (isAdmin(auth)) {
             return ResponseEntity.ok(userService.all());
         }
+        // данные текущего пользователя уже есть в principal (claims токена)
+        if (auth.getPrincipal() instanceof AuthUser) {
+            AuthUser me = (AuthUser) auth.getPrincipal();
+            UserDto dto = new UserDto();
+            dto.setId(me.getId());
+            dto.setUsername(me.getUsername());
+            dto.setRole(me.getRole().name());
+            return ResponseEntity.ok(List.of(dto));
+        }
         var meOpt = userRepository.findByUsername(auth.getName());
         return meOpt.map(user -> ResponseEntity.ok(List.of(toDto(user)))).orElseGet(() -> ResponseEntity.notFound().build());
     }
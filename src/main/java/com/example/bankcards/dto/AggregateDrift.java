@@ -0,0 +1,33 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.CardStatus;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// расхождение агрегата с cards: ownerId == null — глобальный итог по статусу
+public class AggregateDrift {
+    private final UUID ownerId;
+    private final CardStatus status;
+    private final long expectedCount;
+    private final long actualCount;
+    private final BigDecimal expectedBalance;
+    private final BigDecimal actualBalance;
+
+    public AggregateDrift(UUID ownerId, CardStatus status, long expectedCount, long actualCount,
+                          BigDecimal expectedBalance, BigDecimal actualBalance) {
+        this.ownerId = ownerId;
+        this.status = status;
+        this.expectedCount = expectedCount;
+        this.actualCount = actualCount;
+        this.expectedBalance = expectedBalance;
+        this.actualBalance = actualBalance;
+    }
+
+    public UUID getOwnerId() { return ownerId; }
+    public CardStatus getStatus() { return status; }
+    public long getExpectedCount() { return expectedCount; }
+    public long getActualCount() { return actualCount; }
+    public BigDecimal getExpectedBalance() { return expectedBalance; }
+    public BigDecimal getActualBalance() { return actualBalance; }
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+// страница keyset-пагинации: карты и id, с которого продолжать (null — дальше карт нет)
+public class CardSlice {
+    private final List<CardDto> items;
+    private final UUID nextCursor;
+
+    public CardSlice(List<CardDto> items, UUID nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<CardDto> getItems() { return items; }
+    public UUID getNextCursor() { return nextCursor; }
+}
@@ -0,0 +1,40 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.CardStatus;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+// сводка по картам: число и сумма балансов по каждому статусу и итого
+public class CardSummaryDto {
+
+    public static class Totals {
+        private long count;
+        private BigDecimal balance = BigDecimal.ZERO;
+
+        public long getCount() { return count; }
+        public BigDecimal getBalance() { return balance; }
+    }
+
+    private final Map<CardStatus, Totals> byStatus = new EnumMap<>(CardStatus.class);
+    private final Totals total = new Totals();
+
+    public CardSummaryDto() {
+        for (CardStatus s : CardStatus.values()) {
+            byStatus.put(s, new Totals());
+        }
+    }
+
+    public void add(CardStatus status, long count, BigDecimal balance) {
+        BigDecimal b = balance == null ? BigDecimal.ZERO : balance;
+        Totals t = byStatus.get(status);
+        t.count += count;
+        t.balance = t.balance.add(b);
+        total.count += count;
+        total.balance = total.balance.add(b);
+    }
+
+    public Map<CardStatus, Totals> getByStatus() { return byStatus; }
+    public Totals getTotal() { return total; }
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+// результат сверки агрегатов: сколько владельцев проверено, расхождения и были ли они исправлены
+public class ReconcileReport {
+    private final long ownersChecked;
+    private final List<AggregateDrift> drifts;
+    private final boolean fixed;
+
+    public ReconcileReport(long ownersChecked, List<AggregateDrift> drifts, boolean fixed) {
+        this.ownersChecked = ownersChecked;
+        this.drifts = drifts;
+        this.fixed = fixed;
+    }
+
+    public long getOwnersChecked() { return ownersChecked; }
+    public List<AggregateDrift> getDrifts() { return drifts; }
+    public boolean isFixed() { return fixed; }
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+// страница истории переводов (от новых к старым) и id, с которого продолжать (null — это последняя страница)
+public class TransactionSlice {
+    private final List<TransactionDto> items;
+    private final UUID nextCursor;
+
+    public TransactionSlice(List<TransactionDto> items, UUID nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TransactionDto> getItems() { return items; }
+    public UUID getNextCursor() { return nextCursor; }
+}
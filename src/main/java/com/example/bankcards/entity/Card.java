@@ -1,6 +1,7 @@
 package com.example.bankcards.entity;
 
 import com.example.bankcards.config.CardNumberConverter;
+import com.example.bankcards.config.UuidV7Id;
 import com.example.bankcards.entity.enums.CardStatus;
 import jakarta.persistence.*;
 
@@ -9,22 +10,30 @@ import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
-@Table(name = "cards")
+@Table(name = "cards",
+        uniqueConstraints = @UniqueConstraint(name = Card.UX_PAN_HASH, columnNames = "pan_hash"))
 public class Card {
 
+    // имена ограничений из миграций: по ним CardService отличает дубликат номера от прочих ошибок
+    public static final String UX_PAN_HASH = "ux_cards_pan_hash";
+    public static final String FK_OWNER = "fk_cards_user";
+
     @Id
-    @GeneratedValue
+    @UuidV7Id
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "owner_id", nullable = false)
+    @JoinColumn(name = "owner_id", nullable = false, foreignKey = @ForeignKey(name = Card.FK_OWNER))
     private User owner;
 
-    @Column(nullable = false, unique = true, length = 32)
+    // номер расшифровывается только при явном обращении к полю (нужен bytecode enhancement, см. pom.xml):
+    // списки и история строят маску по last4 и не трогают шифр
+    @Basic(fetch = FetchType.LAZY)
+    @Column(nullable = false, length = 512)
     @Convert(converter = CardNumberConverter.class)
     private String encryptedCardNumber;
 
-    @Column(name = "pan_hash", length = 88, unique = true)
+    @Column(name = "pan_hash", length = 88)
     private String panHash;
 
     @Column(nullable = false)
@@ -40,6 +49,11 @@ public class Card {
     @Column(name = "last4", length = 4)
     private String last4;
 
+    // оптимистичная блокировка (bank.transfer.mode=OPTIMISTIC)
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     public Card() {}
 
     public Card(User owner, String encryptedCardNumber, LocalDate expiryDate) {
@@ -74,11 +88,17 @@ public class Card {
     public String getLast4() { return last4; }
     public void setLast4(String last4) { this.last4 = last4; }
 
-    // маскировка номера карты
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    // маскировка номера карты: только по last4, номер не расшифровывается
     @Transient
     public String getMaskedNumber() {
-        if (encryptedCardNumber == null || encryptedCardNumber.length() < 4) return "****";
-        String last4 = encryptedCardNumber.substring(encryptedCardNumber.length() - 4);
+        return mask(last4);
+    }
+
+    public static String mask(String last4) {
+        if (last4 == null || last4.length() < 4) return "****";
         return "**** **** **** " + last4;
     }
 }
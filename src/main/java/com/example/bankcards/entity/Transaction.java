@@ -1,6 +1,8 @@
 package com.example.bankcards.entity;
 
+import com.example.bankcards.config.UuidV7Id;
 import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.repository.TransactionHistoryRow;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -8,19 +10,41 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "transactions")
+@NamedNativeQuery(name = "Transaction.historyByCard", query = TransactionHistoryRow.CARD_SQL,
+        resultSetMapping = "TransactionHistoryRow")
+@NamedNativeQuery(name = "Transaction.historyByUser", query = TransactionHistoryRow.USER_SQL,
+        resultSetMapping = "TransactionHistoryRow")
+@SqlResultSetMapping(name = "TransactionHistoryRow", classes = @ConstructorResult(
+        targetClass = TransactionHistoryRow.class,
+        columns = {
+                @ColumnResult(name = "id", type = UUID.class),
+                @ColumnResult(name = "owner_id", type = UUID.class),
+                @ColumnResult(name = "from_last4", type = String.class),
+                @ColumnResult(name = "to_last4", type = String.class),
+                @ColumnResult(name = "amount", type = BigDecimal.class),
+                @ColumnResult(name = "status", type = String.class),
+                @ColumnResult(name = "created_at", type = LocalDateTime.class),
+                @ColumnResult(name = "message", type = String.class)
+        }))
 public class Transaction {
 
+    // внешние ключи на карты из миграций: по ним CardService.delete узнаёт карту с переводами
+    public static final String FK_FROM_CARD = "fk_transactions_from_card";
+    public static final String FK_TO_CARD = "fk_transactions_to_card";
+
     @Id
-    @GeneratedValue
+    @UuidV7Id
     private UUID id;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
     private User owner;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "from_card_id", foreignKey = @ForeignKey(name = Transaction.FK_FROM_CARD))
     private Card fromCard;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "to_card_id", foreignKey = @ForeignKey(name = Transaction.FK_TO_CARD))
     private Card toCard;
 
     @Column(nullable = false, precision = 19, scale = 2)
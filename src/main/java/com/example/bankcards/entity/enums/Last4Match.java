@@ -0,0 +1,8 @@
+package com.example.bankcards.entity.enums;
+
+// как искать карту по последним цифрам номера
+public enum Last4Match {
+    EXACT,    // last4 = :q — индекс (owner_id, last4)
+    PREFIX,   // last4 LIKE 'q%' — индекс (owner_id, last4 varchar_pattern_ops)
+    CONTAINS  // last4 LIKE '%q%' — быстро только с триграммным индексом (cards-trigram)
+}
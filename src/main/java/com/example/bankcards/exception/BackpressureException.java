@@ -0,0 +1,8 @@
+package com.example.bankcards.exception;
+
+// очередь исполнителя переводов переполнена — клиент должен повторить позже (429)
+public class BackpressureException extends RuntimeException {
+    public BackpressureException(String message) {
+        super(message);
+    }
+}
@@ -34,6 +34,13 @@ public class RestExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(b);
     }
 
+    @ExceptionHandler(jakarta.persistence.EntityNotFoundException.class)
+    public ResponseEntity<Map<String,Object>> notFound(jakarta.persistence.EntityNotFoundException ex){
+        Map<String,Object> b = new HashMap<>();
+        b.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(b);
+    }
+
     @ExceptionHandler(AccessDeniedException.class)
     public ResponseEntity<Map<String,Object>> handleAccessDenied(AccessDeniedException ex) {
         Map<String,Object> b = new HashMap<>();
@@ -49,4 +56,14 @@ public class RestExceptionHandler {
         b.put("detail", ex.getMessage());
         return ResponseEntity.status(HttpStatus.CONFLICT).body(b); // 409
     }
+
+    @ExceptionHandler(BackpressureException.class)
+    public ResponseEntity<Map<String,Object>> tooManyRequests(BackpressureException ex){
+        Map<String,Object> b = new HashMap<>();
+        b.put("error","Too many requests");
+        b.put("detail", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS) // 429
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(b);
+    }
 }
@@ -0,0 +1,15 @@
+package com.example.bankcards.repository;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
+
+// Условные UPDATE перевода (bank.transfer.mode=CONDITIONAL): одна команда вместо SELECT ... FOR UPDATE.
+// Результат — last4 изменённой карты ('' если его нет) из той же команды; пусто — строка не подошла
+// под условие. Версия растёт, чтобы не ломать OPTIMISTIC
+public interface CardBalanceRepository {
+
+    Optional<String> debitIfActive(UUID id, UUID ownerId, BigDecimal amount);
+
+    Optional<String> creditIfActive(UUID id, UUID ownerId, BigDecimal amount);
+}
@@ -0,0 +1,51 @@
+package com.example.bankcards.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// last4 возвращает сам UPDATE: UPDATE ... RETURNING на PostgreSQL, SELECT ... FROM FINAL TABLE (UPDATE ...)
+// на H2 (RETURNING там нет). Отдельного SELECT карт после перевода не нужно
+class CardBalanceRepositoryImpl implements CardBalanceRepository {
+
+    private static final String DEBIT = "update cards set balance = balance - :amount, version = version + 1 " +
+            "where id = :id and owner_id = :ownerId and status = 'ACTIVE' and balance >= :amount";
+    private static final String CREDIT = "update cards set balance = balance + :amount, version = version + 1 " +
+            "where id = :id and owner_id = :ownerId and status = 'ACTIVE'";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public Optional<String> debitIfActive(UUID id, UUID ownerId, BigDecimal amount) {
+        return updateReturningLast4(DEBIT, id, ownerId, amount);
+    }
+
+    @Override
+    public Optional<String> creditIfActive(UUID id, UUID ownerId, BigDecimal amount) {
+        return updateReturningLast4(CREDIT, id, ownerId, amount);
+    }
+
+    private Optional<String> updateReturningLast4(String update, UUID id, UUID ownerId, BigDecimal amount) {
+        String sql = h2()
+                ? "select coalesce(last4, '') from final table (" + update + ")"
+                : update + " returning coalesce(last4, '')";
+        List<?> rows = em.createNativeQuery(sql)
+                .setParameter("id", id)
+                .setParameter("ownerId", ownerId)
+                .setParameter("amount", amount)
+                .getResultList();
+        return rows.isEmpty() ? Optional.empty() : Optional.of((String) rows.get(0));
+    }
+
+    private boolean h2() {
+        return em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof H2Dialect;
+    }
+}
@@ -1,36 +1,42 @@
 package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.Card;
-import com.example.bankcards.entity.enums.CardStatus;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import java.math.BigDecimal;
 import java.util.UUID;
 
 import jakarta.persistence.LockModeType;
 import java.util.*;
 
-public interface CardRepository extends JpaRepository<Card, UUID> {
+public interface CardRepository extends JpaRepository<Card, UUID>, JpaSpecificationExecutor<Card>, CardBalanceRepository {
 
     // для обновления данных карты
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select c from Card c where c.id = :id")
     Optional<Card> findByIdForUpdate(@Param("id") UUID id);
 
-    List<Card> findByOwnerId(UUID ownerId);
+    // для пакетных переводов: все карты блокируются одним запросом в порядке id (без дедлоков)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids order by c.id")
+    List<Card> findAllByIdForUpdate(@Param("ids") Collection<UUID> ids);
 
-    boolean existsByEncryptedCardNumber(String encryptedCardNumber);
+    // пополнение условным UPDATE (bank.transfer.mode=CONDITIONAL); версия растёт, чтобы не ломать OPTIMISTIC
+    @Modifying
+    @Query("""
+           update Card c set c.balance = c.balance + :amount, c.version = c.version + 1
+           where c.id = :id and c.status = com.example.bankcards.entity.enums.CardStatus.ACTIVE
+           """)
+    int topUpIfActive(@Param("id") UUID id, @Param("amount") BigDecimal amount);
 
-    @Query("select c from Card c join fetch c.owner")
-    List<Card> findAllWithOwner();
+    List<Card> findByOwnerId(UUID ownerId);
 
-    boolean existsByPanHash(String panHash);
+    // keyset-страницы всех карт (admin): limit берётся из Pageable, COUNT не выполняется
+    @Query("select c from Card c order by c.id")
+    List<Card> findPage(Pageable limit);
 
-    //для пагинации
-    Page<Card> findByOwnerId(UUID ownerId, Pageable pageable);
-    Page<Card> findByOwnerIdAndStatus(UUID ownerId, CardStatus status, Pageable pageable);
+    @Query("select c from Card c where c.id > :after order by c.id")
+    List<Card> findPageAfter(@Param("after") UUID after, Pageable limit);
 
-    Page<Card> findByOwnerIdAndLast4Containing(UUID ownerId, String last4, Pageable pageable);
-    Page<Card> findByOwnerIdAndStatusAndLast4Containing(UUID ownerId, CardStatus status, String last4, Pageable pageable);
 }
@@ -0,0 +1,36 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Last4Match;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.UUID;
+
+// условия поиска карт; собираются в один запрос через CardRepository.findAll(Specification, Pageable)
+public final class CardSpecifications {
+
+    private CardSpecifications() {}
+
+    public static Specification<Card> ownedBy(UUID ownerId) {
+        return (root, q, cb) -> cb.equal(root.get("owner").get("id"), ownerId);
+    }
+
+    public static Specification<Card> hasStatus(CardStatus status) {
+        return (root, q, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    // digits — уже проверенные цифры (без % и _), поэтому LIKE без ESCAPE
+    public static Specification<Card> last4(String digits, Last4Match match) {
+        return (root, q, cb) -> {
+            switch (match) {
+                case EXACT:
+                    return cb.equal(root.get("last4"), digits);
+                case PREFIX:
+                    return cb.like(root.get("last4"), digits + "%");
+                default:
+                    return cb.like(root.get("last4"), "%" + digits + "%");
+            }
+        };
+    }
+}
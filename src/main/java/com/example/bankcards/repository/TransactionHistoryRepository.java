@@ -0,0 +1,13 @@
+package com.example.bankcards.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// История переводов страницами (created_at desc, id desc), строго раньше курсора (ts, id), не больше n строк
+public interface TransactionHistoryRepository {
+
+    List<TransactionHistoryRow> findPageByCardId(UUID cardId, LocalDateTime ts, UUID id, int n);
+
+    List<TransactionHistoryRow> findPageByUserId(UUID userId, LocalDateTime ts, UUID id, int n);
+}
@@ -0,0 +1,36 @@
+package com.example.bankcards.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Именованные native-запросы с @SqlResultSetMapping вызываются напрямую: производный метод
+// Spring Data с DTO-типом результата подменил бы маппинг на Tuple
+class TransactionHistoryRepositoryImpl implements TransactionHistoryRepository {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public List<TransactionHistoryRow> findPageByCardId(UUID cardId, LocalDateTime ts, UUID id, int n) {
+        return em.createNamedQuery("Transaction.historyByCard", TransactionHistoryRow.class)
+                .setParameter("cardId", cardId)
+                .setParameter("ts", ts)
+                .setParameter("id", id)
+                .setParameter("n", n)
+                .getResultList();
+    }
+
+    @Override
+    public List<TransactionHistoryRow> findPageByUserId(UUID userId, LocalDateTime ts, UUID id, int n) {
+        return em.createNamedQuery("Transaction.historyByUser", TransactionHistoryRow.class)
+                .setParameter("userId", userId)
+                .setParameter("ts", ts)
+                .setParameter("id", id)
+                .setParameter("n", n)
+                .getResultList();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.enums.TransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Строка истории переводов: плоская проекция одного SQL, без сущностей Transaction/Card.
+// Маппинг колонок — @SqlResultSetMapping "TransactionHistoryRow" на Transaction.
+public class TransactionHistoryRow {
+
+    // last4 обеих карт подтягиваются join-ом по первичному ключу уже после LIMIT,
+    // так что на страницу — один запрос и ни одной расшифровки номера
+    private static final String COLUMNS = """
+           select h.id, h.owner_id, f.last4 as from_last4, c.last4 as to_last4,
+                  h.amount, h.status, h.created_at, h.message
+           """;
+    private static final String JOINS = """
+           join cards f on f.id = h.from_card_id
+           join cards c on c.id = h.to_card_id
+           order by h.created_at desc, h.id desc
+           """;
+
+    // По карте, строго раньше курсора (:ts, :id). OR по from/to не ложится на индексы — две ветки
+    // UNION ALL, каждая идёт по своему индексу (from_card_id|to_card_id, created_at desc, id desc)
+    // и читает не больше :n строк. Вторая ветка исключает перевод с карты на саму себя.
+    public static final String CARD_SQL = COLUMNS + """
+           from (
+             select u.* from (
+               (select t.* from transactions t
+                where t.from_card_id = :cardId
+                  and t.created_at <= :ts and (t.created_at < :ts or t.id < :id)
+                order by t.created_at desc, t.id desc
+                limit :n)
+               union all
+               (select t.* from transactions t
+                where t.to_card_id = :cardId and t.from_card_id <> :cardId
+                  and t.created_at <= :ts and (t.created_at < :ts or t.id < :id)
+                order by t.created_at desc, t.id desc
+                limit :n)
+             ) u
+             order by u.created_at desc, u.id desc
+             limit :n
+           ) h
+           """ + JOINS;
+
+    // По пользователю: переводы возможны только между своими картами, поэтому владелец
+    // перевода (owner_id) и есть пользователь обеих карт — без OR, одна ветка
+    // по индексу ix_transactions_owner_created
+    public static final String USER_SQL = COLUMNS + """
+           from (
+             select t.* from transactions t
+             where t.owner_id = :userId
+               and t.created_at <= :ts and (t.created_at < :ts or t.id < :id)
+             order by t.created_at desc, t.id desc
+             limit :n
+           ) h
+           """ + JOINS;
+
+    private final UUID id;
+    private final UUID ownerId;
+    private final String fromLast4;
+    private final String toLast4;
+    private final BigDecimal amount;
+    private final TransactionStatus status;
+    private final LocalDateTime createdAt;
+    private final String message;
+
+    public TransactionHistoryRow(UUID id, UUID ownerId, String fromLast4, String toLast4, BigDecimal amount,
+                                 String status, LocalDateTime createdAt, String message) {
+        this.id = id;
+        this.ownerId = ownerId;
+        this.fromLast4 = fromLast4;
+        this.toLast4 = toLast4;
+        this.amount = amount;
+        this.status = TransactionStatus.valueOf(status);
+        this.createdAt = createdAt;
+        this.message = message;
+    }
+
+    public UUID getId() { return id; }
+    public UUID getOwnerId() { return ownerId; }
+    public String getFromLast4() { return fromLast4; }
+    public String getToLast4() { return toLast4; }
+    public BigDecimal getAmount() { return amount; }
+    public TransactionStatus getStatus() { return status; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public String getMessage() { return message; }
+}
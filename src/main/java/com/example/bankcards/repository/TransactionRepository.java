@@ -4,25 +4,22 @@ import com.example.bankcards.entity.Transaction;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.UUID;
 
-public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
+public interface TransactionRepository extends JpaRepository<Transaction, UUID>, TransactionHistoryRepository {
 
-    @Query("""
-           select t from Transaction t
-           where t.fromCard.id = :cardId or t.toCard.id = :cardId
-           order by t.createdAt desc
-           """)
-    List<Transaction> findByCardId(@Param("cardId") UUID cardId);
+    // created_at перевода-курсора
+    @Query("select t.createdAt from Transaction t where t.id = :id")
+    Optional<LocalDateTime> findCreatedAt(@Param("id") UUID id);
 
-    @Query("""
-           select t from Transaction t
-           where t.fromCard.owner.id = :userId or t.toCard.owner.id = :userId
-           order by t.createdAt desc
-           """)
-    List<Transaction> findByUserId(@Param("userId") UUID userId);
+    // то же в окне [from, to): на PostgreSQL читаются только секции окна, а не индексы всех месяцев
+    @Query("select t.createdAt from Transaction t where t.id = :id and t.createdAt >= :from and t.createdAt < :to")
+    Optional<LocalDateTime> findCreatedAtBetween(@Param("id") UUID id,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
 
-    boolean existsByFromCard_Id(UUID cardId);
-    boolean existsByToCard_Id(UUID cardId);
+    // переводы карты не раньше since (с нижней границей отсекаются секции до появления карты)
+    boolean existsByFromCard_IdAndCreatedAtGreaterThanEqual(UUID cardId, LocalDateTime since);
+    boolean existsByToCard_IdAndCreatedAtGreaterThanEqual(UUID cardId, LocalDateTime since);
 }
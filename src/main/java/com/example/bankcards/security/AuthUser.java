@@ -0,0 +1,61 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.RoleType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// principal аутентифицированного пользователя: id и роль берутся из claims токена
+// (или из БД при логине/перепроверке), контроллерам не нужен findByUsername
+public class AuthUser implements UserDetails, CredentialsContainer {
+
+    private final UUID id;
+    private final String username;
+    private final RoleType role;
+    private String password;
+
+    public AuthUser(UUID id, String username, RoleType role, String password) {
+        this.id = id;
+        this.username = username;
+        this.role = role;
+        this.password = password;
+    }
+
+    public AuthUser(UUID id, String username, RoleType role) {
+        this(id, username, role, null);
+    }
+
+    public UUID getId() { return id; }
+    public RoleType getRole() { return role; }
+
+    // id текущего пользователя или null, если principal не AuthUser (например, в тестах)
+    public static UUID idOf(Authentication auth) {
+        if (auth != null && auth.getPrincipal() instanceof AuthUser) {
+            return ((AuthUser) auth.getPrincipal()).getId();
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+
+    @Override public String getPassword() { return password; }
+    @Override public String getUsername() { return username; }
+    @Override public boolean isAccountNonExpired() { return true; }
+    @Override public boolean isAccountNonLocked() { return true; }
+    @Override public boolean isCredentialsNonExpired() { return true; }
+    @Override public boolean isEnabled() { return true; }
+
+    @Override
+    public void eraseCredentials() {
+        password = null;
+    }
+}
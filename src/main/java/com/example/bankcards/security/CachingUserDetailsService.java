@@ -0,0 +1,66 @@
+package com.example.bankcards.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+// кеш пользователей для JwtAuthFilter: ограничен по размеру (вытесняются редко используемые) и по TTL.
+// Логин (DaoAuthenticationProvider) идёт мимо кеша в UserDetailsServiceImpl.
+// Явно сбрасывается из UserService.register/delete; на других узлах устаревание ограничено TTL.
+@Service
+@Primary
+public class CachingUserDetailsService implements UserDetailsService {
+
+    private final UserDetailsServiceImpl delegate;
+    private final Cache<String, UserDetails> cache;
+
+    public CachingUserDetailsService(UserDetailsServiceImpl delegate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${security.user-cache.max-size:500000}") long maxSize,
+                                     @Value("${security.user-cache.ttl:PT5M}") Duration ttl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size с тегом cache=userDetails
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userDetails");
+    }
+
+    // не найденный пользователь не кешируется: исключение пробрасывается как есть
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return cache.get(username, this::load);
+    }
+
+    // хеш пароля в кеше не держим — фильтру он не нужен
+    private UserDetails load(String username) {
+        UserDetails ud = delegate.loadUserByUsername(username);
+        if (ud instanceof AuthUser) {
+            AuthUser u = (AuthUser) ud;
+            return new AuthUser(u.getId(), u.getUsername(), u.getRole());
+        }
+        return ud;
+    }
+
+    public void evict(String username) {
+        if (username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.entity.enums.RoleType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -13,16 +19,34 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final JwtRevalidation revalidate;
+    private final Duration revalidateAfter;
+    // AFTER: итог перепроверки по uid живёт revalidate-after — старый токен идёт в БД
+    // раз в интервал, а не на каждый запрос
+    private final Cache<String, AuthUser> revalidated;
 
-    public JwtAuthFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    public JwtAuthFilter(JwtUtil jwtUtil,
+                         UserDetailsService userDetailsService,
+                         @Value("${security.jwt.revalidate:AFTER}") JwtRevalidation revalidate,
+                         @Value("${security.jwt.revalidate-after:PT5M}") Duration revalidateAfter,
+                         @Value("${security.jwt.revalidate-cache-size:100000}") long revalidateCacheSize) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.revalidate = revalidate;
+        this.revalidateAfter = revalidateAfter;
+        this.revalidated = revalidate == JwtRevalidation.AFTER && revalidateAfter.toMillis() > 0 && revalidateCacheSize > 0
+                ? Caffeine.newBuilder().maximumSize(revalidateCacheSize).expireAfterWrite(revalidateAfter).build()
+                : null;
     }
 
     @Override
@@ -41,9 +65,10 @@ public class JwtAuthFilter extends OncePerRequestFilter {
                 if (!token.contains(".")) {
                     throw new IllegalArgumentException("Invalid token format");
                 }
-                String username = jwtUtil.getUsername(token);
+                Claims claims = jwtUtil.parse(token);
+                String username = claims.getSubject();
                 if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    UserDetails ud = userDetailsService.loadUserByUsername(username);
+                    UserDetails ud = principal(username, claims);
                     var authToken = new UsernamePasswordAuthenticationToken(ud, null, ud.getAuthorities());
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(req));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
@@ -59,4 +84,46 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         chain.doFilter(req, res);
     }
 
+    // principal из claims uid/role; в БД идём только для старых токенов без claims
+    // и когда этого требует политика перепроверки (удалённые или разжалованные пользователи)
+    private UserDetails principal(String username, Claims claims) {
+        String uid = claims.get(JwtUtil.CLAIM_UID, String.class);
+        String role = claims.get(JwtUtil.CLAIM_ROLE, String.class);
+        if (uid != null && role != null) {
+            if (!mustRevalidate(claims)) {
+                return new AuthUser(UUID.fromString(uid), username, RoleType.valueOf(role));
+            }
+            AuthUser checked = revalidated == null ? null : revalidated.getIfPresent(uid);
+            if (checked != null && checked.getUsername().equals(username)) {
+                return checked;
+            }
+        }
+        UserDetails ud = userDetailsService.loadUserByUsername(username);
+        if (!(ud instanceof AuthUser)) {
+            return ud;
+        }
+        AuthUser u = (AuthUser) ud;
+        // пользователь удалён и заведён заново под тем же именем — старый токен не подходит
+        if (uid != null && !u.getId().toString().equals(uid)) {
+            throw new BadCredentialsException("Token user no longer exists");
+        }
+        // роль берём из БД, хеш пароля в контекст не кладём
+        AuthUser checked = new AuthUser(u.getId(), u.getUsername(), u.getRole());
+        if (revalidated != null && uid != null) {
+            revalidated.put(uid, checked);
+        }
+        return checked;
+    }
+
+    private boolean mustRevalidate(Claims claims) {
+        switch (revalidate) {
+            case NEVER:
+                return false;
+            case ALWAYS:
+                return true;
+            default:
+                Date issuedAt = claims.getIssuedAt();
+                return issuedAt == null || issuedAt.toInstant().isBefore(Instant.now().minus(revalidateAfter));
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package com.example.bankcards.security;
+
+// когда JwtAuthFilter сверяет claims токена с БД (security.jwt.revalidate)
+public enum JwtRevalidation {
+    // доверять uid/role из токена до его истечения
+    NEVER,
+    // загружать пользователя на каждый запрос
+    ALWAYS,
+    // загружать, если токен выпущен раньше security.jwt.revalidate-after
+    AFTER
+}
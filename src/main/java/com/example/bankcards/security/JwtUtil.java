@@ -1,39 +1,107 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.entity.enums.RoleType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
+    // claims с id и ролью пользователя: фильтр строит principal без обращения к БД
+    public static final String CLAIM_UID = "uid";
+    public static final String CLAIM_ROLE = "role";
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
     private final long expiration;
     private final Key key;
+    // JwtParser неизменяемый и потокобезопасный — один на всё приложение
+    private final JwtParser parser;
+    // уже проверенные токены: ключ — SHA-256 токена (сам bearer-токен в памяти не держим),
+    // запись живёт до exp токена; null при parse-cache-size: 0 — проверка на каждый запрос
+    private final Cache<ByteBuffer, Claims> verified;
 
     public JwtUtil(
             @Value("${security.jwt.secret}") String secret,
-            @Value("${security.jwt.expiration:3600000}") long expiration) {
+            @Value("${security.jwt.expiration:3600000}") long expiration,
+            @Value("${security.jwt.parse-cache-size:100000}") long parseCacheSize) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
         this.expiration = expiration;
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        // maximumSize(0) вытесняет асинхронно и ещё может отдавать попадания — без кэша значит без кэша
+        this.verified = parseCacheSize <= 0 ? null : Caffeine.newBuilder()
+                .maximumSize(parseCacheSize)
+                .expireAfter(new Expiry<ByteBuffer, Claims>() {
+                    @Override
+                    public long expireAfterCreate(ByteBuffer k, Claims claims, long currentTime) {
+                        Date exp = claims.getExpiration();
+                        if (exp == null) return 0;
+                        return Math.max(0, TimeUnit.MILLISECONDS.toNanos(exp.getTime() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(ByteBuffer k, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(ByteBuffer k, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
 
-    public String generate(String username) {
+    public String generate(UUID userId, String username, RoleType role) {
         Date now = new Date();
         return Jwts.builder()
                 .setSubject(username)
+                .claim(CLAIM_UID, userId.toString())
+                .claim(CLAIM_ROLE, role.name())
                 .setIssuedAt(now)
                 .setExpiration(new Date(now.getTime() + expiration))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    // проверяет подпись и срок один раз, возвращает все claims.
+    // Повторный запрос с тем же токеном до его exp обходится без HMAC и разбора JSON.
+    public Claims parse(String token) {
+        if (verified == null) {
+            return parser.parseClaimsJws(token).getBody();
+        }
+        ByteBuffer digest = ByteBuffer.wrap(SHA256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+        Claims claims = verified.getIfPresent(digest);
+        if (claims == null) {
+            claims = parser.parseClaimsJws(token).getBody();
+            verified.put(digest, claims);
+        }
+        return claims;
+    }
+
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+            parse(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
@@ -41,7 +109,6 @@ public class JwtUtil {
     }
 
     public String getUsername(String token) {
-        return Jwts.parserBuilder().setSigningKey(key).build()
-                .parseClaimsJws(token).getBody().getSubject();
+        return parse(token).getSubject();
     }
 }
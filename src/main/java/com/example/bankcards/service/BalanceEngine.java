@@ -0,0 +1,22 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+// Кто является источником истины для балансов (bank.balance.engine):
+// jpa — строки cards в БД (по умолчанию), in-memory — InMemoryBalanceEngine с журналом и отложенной записью в БД
+public interface BalanceEngine {
+
+    TransactionDto transfer(TransferRequest req);
+
+    List<TransactionDto> transferBatch(UUID ownerId, List<TransferRequest> reqs);
+
+    void topUp(UUID cardId, BigDecimal amount);
+
+    // удалить карту; false — карты нет
+    boolean deleteCard(UUID cardId);
+}
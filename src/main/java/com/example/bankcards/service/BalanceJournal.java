@@ -0,0 +1,175 @@
+package com.example.bankcards.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+// Журнал операций InMemoryBalanceEngine в memory-mapped файле.
+// Запись фиксированной длины: [len][seq][type][txId][ownerId][fromCardId][toCardId][amount][createdAt][crc32],
+// за последней записью всегда лежит 0. Чтение останавливается на 0, битом crc или разрыве в seq.
+// Пишет только поток движка, поэтому синхронизация не нужна.
+class BalanceJournal implements Closeable {
+
+    static final byte TOP_UP = 1;
+    static final byte TRANSFER = 2;
+
+    private static final UUID NONE = new UUID(0, 0);
+    private static final int PAYLOAD = 8 + 1 + 16 * 4 + 8 + 8;
+    private static final int RECORD = 4 + PAYLOAD + 4;
+
+    static class Entry {
+        long seq;
+        byte type;
+        UUID txId;
+        UUID ownerId;
+        UUID fromCardId;
+        UUID toCardId;
+        long amount;     // в копейках (scale 2)
+        long createdAt;  // epoch millis
+
+        static Entry topUp(UUID cardId, long amount, long createdAt) {
+            Entry e = new Entry();
+            e.type = TOP_UP;
+            e.toCardId = cardId;
+            e.amount = amount;
+            e.createdAt = createdAt;
+            return e;
+        }
+
+        static Entry transfer(UUID txId, UUID ownerId, UUID fromCardId, UUID toCardId, long amount, long createdAt) {
+            Entry e = new Entry();
+            e.type = TRANSFER;
+            e.txId = txId;
+            e.ownerId = ownerId;
+            e.fromCardId = fromCardId;
+            e.toCardId = toCardId;
+            e.amount = amount;
+            e.createdAt = createdAt;
+            return e;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final CRC32 crc = new CRC32();
+    private int position;
+
+    BalanceJournal(Path path, int sizeBytes) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+    }
+
+    // читает все целые записи с начала и ставит позицию записи сразу за последней
+    List<Entry> readAll() {
+        List<Entry> out = new ArrayList<>();
+        int pos = 0;
+        long prevSeq = -1;
+        while (pos + RECORD + 4 <= buf.capacity() && buf.getInt(pos) == PAYLOAD) {
+            if (checksum(pos + 4) != buf.getInt(pos + 4 + PAYLOAD)) break;
+            Entry e = read(pos + 4);
+            if (prevSeq >= 0 && e.seq != prevSeq + 1) break;
+            prevSeq = e.seq;
+            out.add(e);
+            pos += RECORD;
+        }
+        position = pos;
+        return out;
+    }
+
+    boolean hasRoom() {
+        return hasRoom(1);
+    }
+
+    // поместятся ли ещё records записей (пакет переводов пишется целиком или никак)
+    boolean hasRoom(int records) {
+        return position + (long) records * RECORD + 4 <= buf.capacity();
+    }
+
+    int position() {
+        return position;
+    }
+
+    // отменяет записи после position: их не прочтёт ни readAll, ни восстановление
+    void rewind(int position) {
+        this.position = position;
+        buf.putInt(position, 0);
+    }
+
+    void append(Entry e) {
+        if (!hasRoom()) throw new IllegalStateException("Balance journal is full");
+        int p = position + 4;
+        buf.putLong(p, e.seq);
+        buf.put(p + 8, e.type);
+        putUuid(p + 9, e.txId);
+        putUuid(p + 25, e.ownerId);
+        putUuid(p + 41, e.fromCardId);
+        putUuid(p + 57, e.toCardId);
+        buf.putLong(p + 73, e.amount);
+        buf.putLong(p + 81, e.createdAt);
+        buf.putInt(p + PAYLOAD, checksum(p));
+        buf.putInt(position, PAYLOAD);
+        position += RECORD;
+        buf.putInt(position, 0);
+    }
+
+    void force() {
+        buf.force();
+    }
+
+    // все записи уже в БД — начинаем файл заново
+    void reset() {
+        buf.putInt(0, 0);
+        position = 0;
+        buf.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Entry read(int p) {
+        Entry e = new Entry();
+        e.seq = buf.getLong(p);
+        e.type = buf.get(p + 8);
+        e.txId = getUuid(p + 9);
+        e.ownerId = getUuid(p + 25);
+        e.fromCardId = getUuid(p + 41);
+        e.toCardId = getUuid(p + 57);
+        e.amount = buf.getLong(p + 73);
+        e.createdAt = buf.getLong(p + 81);
+        return e;
+    }
+
+    private int checksum(int p) {
+        ByteBuffer slice = buf.duplicate();
+        slice.position(p).limit(p + PAYLOAD);
+        crc.reset();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    private void putUuid(int p, UUID id) {
+        UUID v = id == null ? NONE : id;
+        buf.putLong(p, v.getMostSignificantBits());
+        buf.putLong(p + 8, v.getLeastSignificantBits());
+    }
+
+    private UUID getUuid(int p) {
+        UUID v = new UUID(buf.getLong(p), buf.getLong(p + 8));
+        return NONE.equals(v) ? null : v;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardSummaryDto;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.util.UuidOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// Агрегаты карт, которые поддерживаются в той же транзакции, что и изменение cards:
+//  card_owner_totals  (owner_id, status)  — число карт и сумма балансов пользователя по статусу;
+//  card_global_totals (status, shard)     — то же по всему банку, разбито на SHARDS строк,
+//                                           чтобы пополнения разных карт не ждали одну горячую строку.
+// Переводы между своими ACTIVE-картами сумм не меняют и агрегаты не трогают.
+// Все дельты одной операции применяются в едином порядке (сначала строки владельцев, потом шарды) —
+// без взаимоблокировок между параллельными операциями.
+@Component
+public class CardAggregates {
+
+    private static final Logger log = LoggerFactory.getLogger(CardAggregates.class);
+
+    static final int SHARDS = 16;
+
+    private static final Comparator<UUID> OWNER_ORDER = UuidOrder.COMPARATOR;
+
+    private final JdbcTemplate jdbc;
+    private volatile Boolean postgres;
+
+    public CardAggregates(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    static int shard(UUID cardId) {
+        return Math.floorMod(cardId.hashCode(), SHARDS);
+    }
+
+    // новая карта; строки владельца создаются здесь, остальные операции только обновляют
+    public void cardAdded(UUID cardId, UUID ownerId, CardStatus status, BigDecimal balance) {
+        ensureOwnerRows(ownerId);
+        Deltas d = new Deltas();
+        d.add(cardId, ownerId, status, 1, balance);
+        apply(d);
+    }
+
+    public void cardRemoved(UUID cardId, UUID ownerId, CardStatus status, BigDecimal balance) {
+        Deltas d = new Deltas();
+        d.add(cardId, ownerId, status, -1, balance.negate());
+        apply(d);
+    }
+
+    public void statusChanged(UUID cardId, UUID ownerId, CardStatus from, CardStatus to, BigDecimal balance) {
+        if (from == to) return;
+        Deltas d = new Deltas();
+        d.add(cardId, ownerId, from, -1, balance.negate());
+        d.add(cardId, ownerId, to, 1, balance);
+        apply(d);
+    }
+
+    public void balanceChanged(UUID cardId, UUID ownerId, CardStatus status, BigDecimal delta) {
+        Deltas d = new Deltas();
+        d.add(cardId, ownerId, status, 0, delta);
+        apply(d);
+    }
+
+    // дельты балансов по картам, владелец и статус берутся из cards.
+    // Вызывать после UPDATE этих карт в той же транзакции: строки уже заблокированы, статус актуален
+    public void balancesChanged(Map<UUID, BigDecimal> deltas) {
+        if (deltas.isEmpty()) return;
+        Deltas d = new Deltas();
+        List<UUID> ids = new ArrayList<>(deltas.keySet());
+        for (int from = 0; from < ids.size(); from += 1000) {
+            List<UUID> part = ids.subList(from, Math.min(ids.size(), from + 1000));
+            String in = String.join(",", Collections.nCopies(part.size(), "?"));
+            jdbc.query("select id, owner_id, status from cards where id in (" + in + ")", rs -> {
+                UUID id = rs.getObject(1, UUID.class);
+                d.add(id, rs.getObject(2, UUID.class), CardStatus.valueOf(rs.getString(3)), 0, deltas.get(id));
+            }, part.toArray());
+        }
+        apply(d);
+    }
+
+    public CardSummaryDto global() {
+        CardSummaryDto s = new CardSummaryDto();
+        jdbc.query("select status, sum(card_count), sum(balance) from card_global_totals group by status",
+                rs -> { s.add(CardStatus.valueOf(rs.getString(1)), rs.getLong(2), rs.getBigDecimal(3)); });
+        return s;
+    }
+
+    public CardSummaryDto ofOwner(UUID ownerId) {
+        CardSummaryDto s = new CardSummaryDto();
+        jdbc.query("select status, card_count, balance from card_owner_totals where owner_id = ?",
+                rs -> { s.add(CardStatus.valueOf(rs.getString(1)), rs.getLong(2), rs.getBigDecimal(3)); }, ownerId);
+        return s;
+    }
+
+    // строки владельца по всем статусам; вставка идемпотентна и не конфликтует с параллельной
+    void ensureOwnerRows(UUID ownerId) {
+        String insert = isPostgres()
+                ? "insert into card_owner_totals (owner_id, status, card_count, balance) values (?, ?, 0, 0) on conflict do nothing"
+                // H2 (тесты): конкурентных вставок там нет
+                : "insert into card_owner_totals (owner_id, status, card_count, balance) select cast(? as uuid), cast(? as varchar(20)), 0, 0 "
+                + "where not exists (select 1 from card_owner_totals where owner_id = ? and status = ?)";
+        for (CardStatus status : CardStatus.values()) {
+            if (isPostgres()) jdbc.update(insert, ownerId, status.name());
+            else jdbc.update(insert, ownerId, status.name(), ownerId, status.name());
+        }
+    }
+
+    private void apply(Deltas d) {
+        d.owners.forEach((key, v) -> {
+            if (v.count == 0 && v.balance.signum() == 0) return;
+            int n = jdbc.update("update card_owner_totals set card_count = card_count + ?, balance = balance + ? "
+                    + "where owner_id = ? and status = ?", v.count, v.balance, key.owner, key.status.name());
+            if (n == 0) log.warn("No aggregate row for owner {} / {}, run reconcile", key.owner, key.status);
+        });
+        d.shards.forEach((key, v) -> {
+            if (v.count == 0 && v.balance.signum() == 0) return;
+            int n = jdbc.update("update card_global_totals set card_count = card_count + ?, balance = balance + ? "
+                    + "where shard = ? and status = ?", v.count, v.balance, key.shard, key.status.name());
+            if (n == 0) log.warn("No aggregate row for shard {} / {}, run reconcile", key.shard, key.status);
+        });
+    }
+
+    private boolean isPostgres() {
+        Boolean pg = postgres;
+        if (pg == null) {
+            pg = jdbc.execute((Connection c) -> {
+                try {
+                    return "PostgreSQL".equals(c.getMetaData().getDatabaseProductName());
+                } catch (SQLException e) {
+                    return false;
+                }
+            });
+            postgres = pg;
+        }
+        return pg;
+    }
+
+    // ===== накопление дельт в порядке применения =====
+
+    static final class Value {
+        long count;
+        BigDecimal balance = BigDecimal.ZERO;
+    }
+
+    static final class OwnerKey {
+        final UUID owner;
+        final CardStatus status;
+
+        OwnerKey(UUID owner, CardStatus status) {
+            this.owner = owner;
+            this.status = status;
+        }
+    }
+
+    static final class ShardKey {
+        final int shard;
+        final CardStatus status;
+
+        ShardKey(int shard, CardStatus status) {
+            this.shard = shard;
+            this.status = status;
+        }
+    }
+
+    static final class Deltas {
+        final Map<OwnerKey, Value> owners = new TreeMap<>(Comparator.<OwnerKey, UUID>comparing(k -> k.owner, OWNER_ORDER)
+                .thenComparing(k -> k.status.name()));
+        final Map<ShardKey, Value> shards = new TreeMap<>(Comparator.<ShardKey>comparingInt(k -> k.shard)
+                .thenComparing(k -> k.status.name()));
+
+        void add(UUID cardId, UUID owner, CardStatus status, long count, BigDecimal balance) {
+            if (balance == null) balance = BigDecimal.ZERO;
+            Value o = owners.computeIfAbsent(new OwnerKey(owner, status), k -> new Value());
+            o.count += count;
+            o.balance = o.balance.add(balance);
+            Value s = shards.computeIfAbsent(new ShardKey(shard(cardId), status), k -> new Value());
+            s.count += count;
+            s.balance = s.balance.add(balance);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AggregateDrift;
+import com.example.bankcards.dto.ReconcileReport;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.util.UuidOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Сверка card_owner_totals / card_global_totals с cards.
+// Владельцы делятся на chunks диапазонов UUID, диапазоны проверяются параллельно (parallelism потоков).
+// Каждый диапазон читается в одной транзакции REPEATABLE READ: cards и агрегаты видны на один момент,
+// поэтому идущие параллельно переводы и пополнения ложных расхождений не дают.
+// Исправление — дельтой (card_count + (ожидаемое - текущее)) в той же транзакции; если строку агрегата
+// успели изменить после снимка, PostgreSQL отклонит запись и диапазон будет перепроверен.
+@Component
+public class CardAggregatesReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(CardAggregatesReconciler.class);
+    private static final int ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate snapshot;
+    private final CardAggregates aggregates;
+    private final int parallelism;
+    private final int chunks;
+
+    public CardAggregatesReconciler(JdbcTemplate jdbc,
+                                    PlatformTransactionManager txManager,
+                                    CardAggregates aggregates,
+                                    @Value("${bank.cards.summary.reconcile.parallelism:4}") int parallelism,
+                                    @Value("${bank.cards.summary.reconcile.chunks:16}") int chunks) {
+        this.jdbc = jdbc;
+        this.snapshot = new TransactionTemplate(txManager);
+        this.snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.aggregates = aggregates;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunks = Math.max(1, chunks);
+    }
+
+    public ReconcileReport reconcile(boolean fix) {
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunks), r -> {
+            Thread t = new Thread(r, "card-aggregates-reconcile-" + seq.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        List<AggregateDrift> drifts = new ArrayList<>();
+        long owners = 0;
+        try {
+            List<Future<ChunkResult>> futures = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                int chunk = i;
+                futures.add(pool.submit(() -> withRetry(() -> checkOwners(chunk, fix))));
+            }
+            for (Future<ChunkResult> f : futures) {
+                ChunkResult r = f.get();
+                owners += r.owners;
+                drifts.addAll(r.drifts);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reconcile interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        drifts.addAll(withRetry(() -> checkGlobal(fix)).drifts);
+        if (!drifts.isEmpty()) {
+            log.warn("Card aggregates drift: {} rows{}", drifts.size(), fix ? ", fixed" : "");
+        }
+        return new ReconcileReport(owners, drifts, fix && !drifts.isEmpty());
+    }
+
+    private ChunkResult checkOwners(int chunk, boolean fix) {
+        UUID from = UuidOrder.rangeStart(chunk, chunks);
+        UUID to = UuidOrder.rangeEnd(chunk, chunks);
+        return snapshot.execute(s -> {
+            Map<String, Row> rows = new LinkedHashMap<>();
+            jdbc.query("select owner_id, status, count(*), coalesce(sum(balance), 0) from cards "
+                    + "where owner_id >= ? and owner_id <= ? group by owner_id, status", rs -> {
+                Row r = row(rows, rs.getObject(1, UUID.class), rs.getString(2));
+                r.expectedCount = rs.getLong(3);
+                r.expectedBalance = rs.getBigDecimal(4);
+            }, from, to);
+            jdbc.query("select owner_id, status, card_count, balance from card_owner_totals "
+                    + "where owner_id >= ? and owner_id <= ?", rs -> {
+                Row r = row(rows, rs.getObject(1, UUID.class), rs.getString(2));
+                r.actualCount = rs.getLong(3);
+                r.actualBalance = rs.getBigDecimal(4);
+            }, from, to);
+
+            Set<UUID> owners = new HashSet<>();
+            List<AggregateDrift> drifts = new ArrayList<>();
+            for (Row r : rows.values()) {
+                owners.add(r.owner);
+                boolean missing = r.actualBalance == null;
+                BigDecimal actual = missing ? BigDecimal.ZERO : r.actualBalance;
+                if (r.expectedCount == r.actualCount && r.expectedBalance.compareTo(actual) == 0
+                        && !(missing && r.expectedCount > 0)) {
+                    continue;
+                }
+                drifts.add(new AggregateDrift(r.owner, r.status, r.expectedCount, r.actualCount, r.expectedBalance, actual));
+                if (fix) {
+                    if (missing) aggregates.ensureOwnerRows(r.owner);
+                    jdbc.update("update card_owner_totals set card_count = card_count + ?, balance = balance + ? "
+                                    + "where owner_id = ? and status = ?",
+                            r.expectedCount - r.actualCount, r.expectedBalance.subtract(actual), r.owner, r.status.name());
+                }
+            }
+            return new ChunkResult(owners.size(), drifts);
+        });
+    }
+
+    private static Row row(Map<String, Row> rows, UUID owner, String status) {
+        return rows.computeIfAbsent(owner + "/" + status, k -> new Row(owner, CardStatus.valueOf(status)));
+    }
+
+    // итоги по статусам — сумма шардов; исправление кладётся в шард 0
+    private ChunkResult checkGlobal(boolean fix) {
+        return snapshot.execute(s -> {
+            List<AggregateDrift> drifts = new ArrayList<>();
+            for (CardStatus status : CardStatus.values()) {
+                Map<String, Object> expected = jdbc.queryForMap(
+                        "select count(*) as n, coalesce(sum(balance), 0) as b from cards where status = ?", status.name());
+                Map<String, Object> actual = jdbc.queryForMap(
+                        "select coalesce(sum(card_count), 0) as n, coalesce(sum(balance), 0) as b from card_global_totals where status = ?",
+                        status.name());
+                long en = ((Number) expected.get("n")).longValue();
+                long an = ((Number) actual.get("n")).longValue();
+                BigDecimal eb = new BigDecimal(expected.get("b").toString());
+                BigDecimal ab = new BigDecimal(actual.get("b").toString());
+                if (en == an && eb.compareTo(ab) == 0) continue;
+                drifts.add(new AggregateDrift(null, status, en, an, eb, ab));
+                if (fix) {
+                    int n = jdbc.update("update card_global_totals set card_count = card_count + ?, balance = balance + ? "
+                            + "where status = ? and shard = 0", en - an, eb.subtract(ab), status.name());
+                    if (n == 0) {
+                        jdbc.update("insert into card_global_totals (status, shard, card_count, balance) values (?, 0, ?, ?)",
+                                status.name(), en - an, eb.subtract(ab));
+                    }
+                }
+            }
+            return new ChunkResult(0, drifts);
+        });
+    }
+
+    private ChunkResult withRetry(Supplier<ChunkResult> check) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return check.get();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= ATTEMPTS) throw e;
+                log.debug("Reconcile snapshot conflict, retrying: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static final class Row {
+        final UUID owner;
+        final CardStatus status;
+        long expectedCount;
+        BigDecimal expectedBalance = BigDecimal.ZERO;
+        long actualCount;
+        BigDecimal actualBalance; // null — строки агрегата нет
+
+        Row(UUID owner, CardStatus status) {
+            this.owner = owner;
+            this.status = status;
+        }
+    }
+
+    private static final class ChunkResult {
+        final long owners;
+        final List<AggregateDrift> drifts;
+
+        ChunkResult(long owners, List<AggregateDrift> drifts) {
+            this.owners = owners;
+            this.drifts = drifts;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bankcards.service;
+
+import java.util.UUID;
+
+// статус карты изменён или карта удалена (нужно InMemoryBalanceEngine, который кэширует статусы)
+public class CardChangedEvent {
+
+    private final UUID cardId;
+
+    public CardChangedEvent(UUID cardId) {
+        this.cardId = cardId;
+    }
+
+    public UUID getCardId() { return cardId; }
+}
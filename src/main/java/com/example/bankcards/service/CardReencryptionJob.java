@@ -0,0 +1,234 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.CardNumberConverter;
+import com.example.bankcards.util.PanHasher;
+import com.example.bankcards.util.UuidOrder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Фоновая перешифровка cards.encrypted_card_number активным ключом (encrypt.active-key).
+// Пространство UUID делится на parallelism диапазонов; каждый поток идёт по своему диапазону
+// keyset-пагинацией (id > последний обработанный) кусками по chunk-size строк.
+// Кусок — отдельная короткая транзакция: условный UPDATE (только если шифротекст не изменился
+// с момента чтения) + сдвиг контрольной точки в card_reencrypt_checkpoint. Блокировок на время
+// чтения нет, так что переводы не ждут; после рестарта работа продолжается с контрольной точки.
+// Строки, которые не удалось расшифровать или которые изменились между чтением и записью, считаются
+// в failed_rows / changed_rows контрольной точки; пока они не нулевые, диапазон не отмечается пройденным —
+// last_card_id сбрасывается, и следующий запуск проходит диапазон заново (актуальные строки пропускаются).
+// Старый ключ можно убирать из encrypt.keys только после того, как все диапазоны
+// пройдены (last_card_id = верхняя граница диапазона).
+@Component
+@ConditionalOnProperty(name = "encrypt.reencrypt.enabled", havingValue = "true")
+public class CardReencryptionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(CardReencryptionJob.class);
+
+    private enum Outcome { UPDATED, CURRENT, CHANGED, FAILED }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final CardNumberConverter converter;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long nanosPerRow;
+    private final AtomicLong nextPermit = new AtomicLong();
+    private final Counter updated;
+    private final Counter skipped;
+    private final Counter failed;
+
+    private volatile boolean running = true;
+    private ExecutorService workers;
+
+    public CardReencryptionJob(JdbcTemplate jdbc,
+                               PlatformTransactionManager txManager,
+                               CardNumberConverter converter,
+                               MeterRegistry registry,
+                               @Value("${encrypt.reencrypt.chunk-size:500}") int chunkSize,
+                               @Value("${encrypt.reencrypt.rate-per-second:2000}") int ratePerSecond,
+                               @Value("${encrypt.reencrypt.parallelism:2}") int parallelism) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.converter = converter;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelism = Math.max(1, parallelism);
+        this.nanosPerRow = ratePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSecond : 0;
+        this.updated = Counter.builder("bank.card.reencrypt.rows").tag("result", "updated").register(registry);
+        this.skipped = Counter.builder("bank.card.reencrypt.rows").tag("result", "skipped").register(registry);
+        this.failed = Counter.builder("bank.card.reencrypt.rows").tag("result", "failed").register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        AtomicInteger seq = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "card-reencrypt-" + seq.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < parallelism; i++) {
+            int range = i;
+            workers.submit(() -> runRange(range));
+        }
+        workers.shutdown();
+        log.info("Card re-encryption started: key={}, ranges={}, chunk={}", converter.getActiveKey(), parallelism, chunkSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (workers != null) workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // синхронный прогон всех диапазонов (тесты, ручной запуск)
+    public void runAll() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                int range = i;
+                futures.add(pool.submit(() -> runRange(range)));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    void runRange(int range) {
+        String checkpointId = "k" + converter.getActiveKey() + "-" + range + "/" + parallelism;
+        UUID from = UuidOrder.rangeStart(range, parallelism);
+        UUID to = UuidOrder.rangeEnd(range, parallelism);
+
+        UUID cursor = loadCheckpoint(checkpointId);
+        if (cursor != null && cursor.equals(to)) {
+            log.debug("Re-encryption range {} already done", checkpointId);
+            return;
+        }
+        if (cursor == null) {
+            // проход с начала диапазона — итоги прошлого прохода больше не нужны
+            jdbc.update("update card_reencrypt_checkpoint set failed_rows = 0, changed_rows = 0 where id = ?", checkpointId);
+        }
+        try {
+            while (running) {
+                List<Object[]> rows = cursor == null
+                        ? jdbc.query("select id, encrypted_card_number, last4 from cards where id >= ? and id <= ? order by id limit ?",
+                                (rs, n) -> new Object[]{rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3)},
+                                from, to, chunkSize)
+                        : jdbc.query("select id, encrypted_card_number, last4 from cards where id > ? and id <= ? order by id limit ?",
+                                (rs, n) -> new Object[]{rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3)},
+                                cursor, to, chunkSize);
+                boolean last = rows.size() < chunkSize;
+                UUID next = last ? to : (UUID) rows.get(rows.size() - 1)[0];
+                throttle(rows.size());
+                Integer pending = tx.execute(s -> {
+                    int failedRows = 0;
+                    int changedRows = 0;
+                    for (Object[] row : rows) {
+                        Outcome o = reencrypt((UUID) row[0], (String) row[1], (String) row[2]);
+                        if (o == Outcome.FAILED) failedRows++;
+                        else if (o == Outcome.CHANGED) changedRows++;
+                    }
+                    jdbc.update("update card_reencrypt_checkpoint set last_card_id = ?, failed_rows = failed_rows + ?, " +
+                            "changed_rows = changed_rows + ?, updated_at = now() where id = ?",
+                            next, failedRows, changedRows, checkpointId);
+                    if (!last) return 0;
+                    Integer left = jdbc.queryForObject("select failed_rows + changed_rows from card_reencrypt_checkpoint where id = ?",
+                            Integer.class, checkpointId);
+                    if (left != null && left > 0) {
+                        // пропущенные строки остались — диапазон не пройден, следующий запуск начнёт его сначала
+                        jdbc.update("update card_reencrypt_checkpoint set last_card_id = null where id = ?", checkpointId);
+                    }
+                    return left;
+                });
+                cursor = next;
+                if (last) {
+                    if (pending != null && pending > 0) {
+                        log.warn("Re-encryption range {} left {} rows behind, it will be rescanned on the next run", checkpointId, pending);
+                    } else {
+                        log.info("Re-encryption range {} done", checkpointId);
+                    }
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            // контрольная точка осталась на последнем целом куске — следующий запуск продолжит с неё
+            log.error("Re-encryption range {} stopped at {}", checkpointId, cursor, e);
+        }
+    }
+
+    private Outcome reencrypt(UUID id, String stored, String last4) {
+        if (converter.isCurrent(stored)) {
+            skipped.increment();
+            return Outcome.CURRENT;
+        }
+        try {
+            // строго: при ошибке расшифровки строка уходит в failed, а не перешифровывается как «открытый номер»
+            String pan = converter.decryptStrict(stored);
+            String fresh = converter.convertToDatabaseColumn(pan);
+            String normalized = PanHasher.normalize(pan);
+            String digits = normalized.length() >= 4 ? normalized.substring(normalized.length() - 4) : null;
+            // карту могли изменить между чтением и записью — строка пропускается и учитывается в changed_rows
+            int n = jdbc.update("update cards set encrypted_card_number = ?, last4 = coalesce(last4, ?) " +
+                    "where id = ? and encrypted_card_number = ?", fresh, last4 == null ? digits : last4, id, stored);
+            if (n == 1) {
+                updated.increment();
+                return Outcome.UPDATED;
+            }
+            skipped.increment();
+            return Outcome.CHANGED;
+        } catch (RuntimeException e) {
+            // одна битая строка не должна останавливать ротацию; она учитывается в failed_rows
+            failed.increment();
+            log.warn("Card {} was not re-encrypted: {}", id, e.getMessage());
+            return Outcome.FAILED;
+        }
+    }
+
+    private UUID loadCheckpoint(String id) {
+        List<UUID> found = jdbc.query("select last_card_id from card_reencrypt_checkpoint where id = ?",
+                (rs, n) -> rs.getObject(1, UUID.class), id);
+        if (found.isEmpty()) {
+            jdbc.update("insert into card_reencrypt_checkpoint (id) values (?)", id);
+            return null;
+        }
+        return found.get(0);
+    }
+
+    // общий на все потоки ограничитель: каждая строка занимает nanosPerRow на временной шкале
+    private void throttle(int rows) {
+        if (nanosPerRow == 0 || rows == 0) return;
+        long cost = nanosPerRow * rows;
+        long now = System.nanoTime();
+        long end = nextPermit.accumulateAndGet(cost, (prev, c) -> Math.max(prev, now) + c);
+        long wait = end - cost - now;
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+}
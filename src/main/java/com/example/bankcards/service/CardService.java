@@ -1,44 +1,122 @@
 package com.example.bankcards.service;
 
 import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.CardSlice;
+import com.example.bankcards.dto.CardSummaryDto;
 import com.example.bankcards.dto.CreateCardRequest;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.Transaction;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Last4Match;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.CardSpecifications;
 import com.example.bankcards.repository.TransactionRepository;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.util.PanHasher;
+import com.example.bankcards.util.UuidV7;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class CardService {
 
+    // Время в UUIDv7 id карты ставят часы узла, выдавшего id, а created_at перевода — часы узла, который
+    // его провёл. Проверка переводов при удалении ищет их не раньше времени из id минус этот запас,
+    // т. е. считает, что часы узлов расходятся меньше чем на сутки. Если это нарушено, более ранний
+    // перевод всё равно не даст удалить карту: его остановит внешний ключ transactions -> cards (см. delete)
+    private static final Duration ID_CLOCK_SKEW = Duration.ofDays(1);
+    private static final LocalDateTime NO_LOWER_BOUND = LocalDateTime.of(1970, 1, 1, 0, 0);
+
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
     private final TransactionRepository transactionRepository;
 
-    public CardService(CardRepository cardRepository, UserRepository userRepository, TransactionRepository transactionRepository) {
+    @Value("${bank.transfer.mode:PESSIMISTIC}")
+    private TransferMode mode = TransferMode.PESSIMISTIC;
+
+    @Value("${bank.cards.page.max-size:1000}")
+    private int maxPageSize = 1000;
+
+    @Value("${bank.cards.search.default-match:PREFIX}")
+    private Last4Match defaultLast4Match = Last4Match.PREFIX;
+
+    @Value("${bank.cards.stream.fetch-size:500}")
+    private int streamFetchSize = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ApplicationEventPublisher events;
+    private final PanHasher panHasher;
+    private final CardAggregates aggregates;
+
+    public CardService(CardRepository cardRepository, UserRepository userRepository, TransactionRepository transactionRepository,
+                       ApplicationEventPublisher events, PanHasher panHasher, CardAggregates aggregates) {
         this.cardRepository = cardRepository;
         this.userRepository = userRepository;
         this.transactionRepository = transactionRepository;
+        this.events = events;
+        this.panHasher = panHasher;
+        this.aggregates = aggregates;
     }
 
-    // Список всех карт (admin сценарий)
+    // Все карты (admin): keyset-пагинация по id — WHERE id > :after ORDER BY id LIMIT size+1
+    // идёт по первичному ключу без OFFSET и COUNT, лишняя строка говорит, есть ли следующая страница
     @Transactional(readOnly = true)
-    public List<CardDto> getAll() {
-        return cardRepository.findAllWithOwner()
-                .stream().map(this::toDto)
-                .collect(Collectors.toList());
+    public CardSlice getAllPage(UUID after, int size) {
+        if (size < 1) throw new IllegalArgumentException("Page size must be positive");
+        int limit = Math.min(size, maxPageSize);
+        PageRequest page = PageRequest.of(0, limit + 1);
+        List<Card> cards = after == null
+                ? cardRepository.findPage(page)
+                : cardRepository.findPageAfter(after, page);
+        boolean more = cards.size() > limit;
+        List<CardDto> items = cards.stream().limit(limit).map(this::toDto).collect(Collectors.toList());
+        return new CardSlice(items, more ? items.get(limit - 1).getId() : null);
+    }
+
+    // Все карты потоком (admin-выгрузка): курсор БД с fetch-size строк за раз, контекст
+    // персистентности очищается после каждой порции — память не растёт с размером таблицы
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<CardDto> sink) {
+        try (ScrollableResults<Card> rows = entityManager.unwrap(Session.class)
+                .createQuery("select c from Card c order by c.id", Card.class)
+                .setFetchSize(streamFetchSize)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            int n = 0;
+            while (rows.next()) {
+                sink.accept(toDto(rows.get()));
+                if (++n % streamFetchSize == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
     }
 
     // Карты конкретного пользователя
@@ -49,94 +127,152 @@ public class CardService {
                 .collect(Collectors.toList());
     }
 
-    // Создать карту пользователю
+    // Создать карту пользователю: один INSERT без предварительных проверок.
+    // Дубликат номера ловит уникальный индекс ux_cards_pan_hash (номер шифруется со случайным IV,
+    // поэтому искать по encrypted_card_number бессмысленно), несуществующего владельца — fk_cards_user.
     @Transactional
     public CardDto createForUser(UUID userId, CreateCardRequest req) {
-        User owner = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found: " + userId));
-
         String normalized = PanHasher.normalize(req.getEncryptedCardNumber());
-        String hash = PanHasher.hmacSha256Base64(normalized);
         LocalDate expire = req.getExpiryDate();
 
-        if (req.getEncryptedCardNumber().replace(" ", "").length() != 16) throw new IllegalArgumentException("Invalid card number (length must be 16)");
+        if (normalized.length() != 16) throw new IllegalArgumentException("Invalid card number (length must be 16)");
 
         if (expire.isBefore(LocalDate.now())) throw new IllegalArgumentException("Card is expired");
 
-        if (cardRepository.existsByPanHash(hash)) throw new IllegalArgumentException("PanHash already exists");
-
-        if (cardRepository.existsByEncryptedCardNumber(req.getEncryptedCardNumber())) {
-            throw new IllegalArgumentException("Card number already exists");
-        }
-
         Card c = new Card();
-        c.setOwner(owner);
+        c.setOwner(userRepository.getReferenceById(userId));
         c.setEncryptedCardNumber(normalized);
         c.setLast4(normalized.substring(normalized.length()-4));
-        c.setPanHash(hash);
+        c.setPanHash(panHasher.hmacSha256Base64(normalized));
         c.setExpiryDate(req.getExpiryDate());
         c.setStatus(CardStatus.ACTIVE);
         c.setBalance(BigDecimal.ZERO);
 
-        cardRepository.save(c);
+        try {
+            cardRepository.saveAndFlush(c);
+        } catch (DataIntegrityViolationException e) {
+            String constraint = violatedConstraint(e);
+            if (constraint.contains(Card.UX_PAN_HASH)) {
+                throw new IllegalStateException("Card number already exists");
+            }
+            if (constraint.contains(Card.FK_OWNER)) {
+                throw new IllegalArgumentException("User not found: " + userId);
+            }
+            throw e;
+        }
+        aggregates.cardAdded(c.getId(), userId, c.getStatus(), c.getBalance());
         return toDto(c);
     }
 
+    // имя нарушенного ограничения в нижнем регистре (или пустая строка)
+    private static String violatedConstraint(DataIntegrityViolationException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConstraintViolationException) {
+                String name = ((ConstraintViolationException) t).getConstraintName();
+                return name == null ? "" : name.toLowerCase(Locale.ROOT);
+            }
+        }
+        return "";
+    }
+
     // Пополнение баланса
+    @OptimisticRetry("topUp")
     @Transactional
     public void topUp(UUID cardId, BigDecimal amount) {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
-        var card = cardRepository.findByIdForUpdate(cardId)
+        if (mode == TransferMode.CONDITIONAL) {
+            if (cardRepository.topUpIfActive(cardId, amount) == 1) {
+                // строка карты уже заблокирована UPDATE-ом, владелец и статус читаются из неё
+                aggregates.balancesChanged(Map.of(cardId, amount));
+                return;
+            }
+            var card = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new IllegalArgumentException("Card not found"));
+            throw new IllegalArgumentException("Card is not ACTIVE: " + card.getStatus());
+        }
+        var card = (mode == TransferMode.OPTIMISTIC
+                ? cardRepository.findById(cardId)
+                : cardRepository.findByIdForUpdate(cardId))
                 .orElseThrow(() -> new IllegalArgumentException("Card not found"));
         if (card.getStatus() != CardStatus.ACTIVE) {
             throw new IllegalArgumentException("Card is not ACTIVE: " + card.getStatus());
         }
         card.setBalance(card.getBalance().add(amount));
+        // сначала строка карты, потом агрегаты — тот же порядок блокировок, что у смены статуса
+        cardRepository.flush();
+        aggregates.balanceChanged(cardId, card.getOwner().getId(), card.getStatus(), amount);
     }
 
     // Удалить карту
     @Transactional
     public boolean delete(UUID cardId) {
-        if (transactionRepository.existsByFromCard_Id(cardId)
-                || transactionRepository.existsByToCard_Id(cardId)) {
+        LocalDateTime since = issuedNotBefore(cardId);
+        if (transactionRepository.existsByFromCard_IdAndCreatedAtGreaterThanEqual(cardId, since)
+                || transactionRepository.existsByToCard_IdAndCreatedAtGreaterThanEqual(cardId, since)) {
             throw new IllegalStateException("Card has related transactions");
         }
-        if (!cardRepository.existsById(cardId)) return false;
-        cardRepository.deleteById(cardId);
+        Card c = cardRepository.findByIdForUpdate(cardId).orElse(null);
+        if (c == null) return false;
+        aggregates.cardRemoved(cardId, c.getOwner().getId(), c.getStatus(), c.getBalance());
+        try {
+            cardRepository.delete(c);
+            cardRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            // перевод вне окна issuedNotBefore (часы разошлись больше чем на ID_CLOCK_SKEW) — тот же отказ;
+            // прочие нарушения ограничений пробрасываются как есть
+            String constraint = violatedConstraint(e);
+            if (constraint.contains(Transaction.FK_FROM_CARD) || constraint.contains(Transaction.FK_TO_CARD)) {
+                throw new IllegalStateException("Card has related transactions");
+            }
+            throw e;
+        }
+        events.publishEvent(new CardChangedEvent(cardId));
         return true;
     }
 
-    public Page<CardDto> getOwnPaged(UUID ownerId, CardStatus status, String last4, Pageable pageable) {
-        Page<Card> page;
-        boolean hasStatus = status != null;
-        boolean hasLast4 = last4 != null && !last4.isBlank();
-
-        if (hasStatus && hasLast4) {
-            page = cardRepository.findByOwnerIdAndStatusAndLast4Containing(ownerId, status, last4, pageable);
-        } else if (hasStatus) {
-            page = cardRepository.findByOwnerIdAndStatus(ownerId, status, pageable);
-        } else if (hasLast4) {
-            page = cardRepository.findByOwnerIdAndLast4Containing(ownerId, last4, pageable);
-        } else {
-            page = cardRepository.findByOwnerId(ownerId, pageable);
+    // переводов раньше появления карты не бывает: у UUIDv7 время создания — в самом id
+    // (с запасом на расхождение часов), у старых v4 id — без нижней границы
+    private static LocalDateTime issuedNotBefore(UUID cardId) {
+        return cardId.version() == 7
+                ? UuidV7.localDateTime(cardId).minus(ID_CLOCK_SKEW)
+                : NO_LOWER_BOUND;
+    }
+
+    // Свои карты страницами; фильтры собираются в один запрос (CardSpecifications).
+    // Поиск по last4: 4 цифры — всегда точное совпадение, иначе match (по умолчанию bank.cards.search.default-match)
+    @Transactional(readOnly = true)
+    public Page<CardDto> getOwnPaged(UUID ownerId, CardStatus status, String last4, Last4Match match, Pageable pageable) {
+        Specification<Card> spec = CardSpecifications.ownedBy(ownerId);
+        if (status != null) {
+            spec = spec.and(CardSpecifications.hasStatus(status));
+        }
+        if (last4 != null && !last4.isBlank()) {
+            String digits = last4.trim();
+            if (digits.length() > 4 || !digits.chars().allMatch(Character::isDigit)) {
+                throw new IllegalArgumentException("last4 must be 1-4 digits");
+            }
+            Last4Match m = digits.length() == 4 ? Last4Match.EXACT : (match != null ? match : defaultLast4Match);
+            spec = spec.and(CardSpecifications.last4(digits, m));
         }
-        return page.map(this::toDto);
+        return cardRepository.findAll(spec, pageable).map(this::toDto);
     }
 
     // установка статуса
     @Transactional
     public void adminSetStatus(UUID cardId, CardStatus status) {
-        Card c = cardRepository.findById(cardId)
+        Card c = cardRepository.findByIdForUpdate(cardId)
                 .orElseThrow(() -> new IllegalArgumentException("Card not found"));
+        aggregates.statusChanged(cardId, c.getOwner().getId(), c.getStatus(), status, c.getBalance());
         c.setStatus(status);
+        events.publishEvent(new CardChangedEvent(cardId));
     }
 
     // запрос блокировки
     @Transactional
     public void userRequestBlock(UUID cardId, UUID ownerId) {
-        Card c = cardRepository.findById(cardId)
+        Card c = cardRepository.findByIdForUpdate(cardId)
                 .orElseThrow(() -> new IllegalArgumentException("Card not found"));
         if (!c.getOwner().getId().equals(ownerId)) {
             throw new IllegalArgumentException("Forbidden");
@@ -144,7 +280,20 @@ public class CardService {
         if (c.getStatus() == CardStatus.BLOCKED) {
             throw new IllegalArgumentException("Card already blocked");
         }
+        aggregates.statusChanged(cardId, ownerId, c.getStatus(), CardStatus.BLOCK_REQUESTED, c.getBalance());
         c.setStatus(CardStatus.BLOCK_REQUESTED);
+        events.publishEvent(new CardChangedEvent(cardId));
+    }
+
+    // Сводка по картам из card_owner_totals / card_global_totals — без сканирования cards
+    @Transactional(readOnly = true)
+    public CardSummaryDto summaryOf(UUID ownerId) {
+        return aggregates.ofOwner(ownerId);
+    }
+
+    @Transactional(readOnly = true)
+    public CardSummaryDto globalSummary() {
+        return aggregates.global();
     }
 
     public CardDto toDto(Card c) {
@@ -0,0 +1,23 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// по умолчанию: перевод в потоке запроса, своя транзакция на каждый перевод
+@Component
+@ConditionalOnProperty(name = "bank.transfer.executor", havingValue = "direct", matchIfMissing = true)
+public class DirectTransferExecutor implements TransferExecutor {
+
+    private final TransferService transferService;
+
+    public DirectTransferExecutor(TransferService transferService) {
+        this.transferService = transferService;
+    }
+
+    @Override
+    public TransactionDto execute(TransferRequest req) {
+        return transferService.transfer(req);
+    }
+}
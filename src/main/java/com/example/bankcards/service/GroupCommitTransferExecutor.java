@@ -0,0 +1,195 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.exception.BackpressureException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Групповой коммит: переводы копятся в ограниченной очереди и выполняются микропакетами
+// (до max-batch штук или max-wait-ms) в одной транзакции — один коммит/fsync на пакет.
+// Если пакет падает, его переводы повторяются поштучно, и каждый вызывающий получает свой результат.
+@Component
+@ConditionalOnProperty(name = "bank.transfer.executor", havingValue = "group-commit")
+public class GroupCommitTransferExecutor implements TransferExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitTransferExecutor.class);
+
+    private static final class Pending {
+        final TransferRequest req;
+        final CompletableFuture<TransactionDto> result = new CompletableFuture<>();
+
+        Pending(TransferRequest req) {
+            this.req = req;
+        }
+    }
+
+    private final TransferService transferService;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final long enqueueTimeoutMs;
+    private final long resultTimeoutMs;
+    private final List<Thread> workers = new ArrayList<>();
+    private final DistributionSummary batchSize;
+    private final Counter fallbacks;
+
+    private volatile boolean running = true;
+
+    public GroupCommitTransferExecutor(TransferService transferService,
+                                       MeterRegistry registry,
+                                       @Value("${bank.transfer.group-commit.queue-capacity:10000}") int queueCapacity,
+                                       @Value("${bank.transfer.group-commit.max-batch:64}") int maxBatch,
+                                       @Value("${bank.transfer.group-commit.max-wait-ms:3}") long maxWaitMs,
+                                       @Value("${bank.transfer.group-commit.enqueue-timeout-ms:50}") long enqueueTimeoutMs,
+                                       @Value("${bank.transfer.group-commit.workers:2}") int workers,
+                                       @Value("${bank.transfer.group-commit.result-timeout-ms:30000}") long resultTimeoutMs) {
+        this.transferService = transferService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.resultTimeoutMs = Math.max(1, resultTimeoutMs);
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            Thread t = new Thread(this::drainLoop, "transfer-group-commit-" + i);
+            t.setDaemon(true);
+            this.workers.add(t);
+        }
+        this.batchSize = DistributionSummary.builder("bank.transfer.group-commit.batch.size").register(registry);
+        this.fallbacks = Counter.builder("bank.transfer.group-commit.fallbacks").register(registry);
+        Gauge.builder("bank.transfer.group-commit.queue.size", queue, BlockingQueue::size).register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    // остановка: новые переводы не принимаются, уже поставленные в очередь дорабатываются;
+    // что не успело за 10 с (или попало в очередь после выхода воркеров) завершается 429, а не висит
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread t : workers) {
+            t.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(p -> p.result.completeExceptionally(new BackpressureException("Transfer executor stopped")));
+    }
+
+    @Override
+    public TransactionDto execute(TransferRequest req) {
+        if (!running) {
+            throw new BackpressureException("Transfer executor is shutting down");
+        }
+        Pending p = new Pending(req);
+        try {
+            if (!queue.offer(p, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new BackpressureException("Transfer queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackpressureException("Interrupted while enqueueing transfer");
+        }
+        // остановка могла начаться между проверкой running и offer — тогда воркеры перевод уже не возьмут
+        if (!running && queue.remove(p)) {
+            throw new BackpressureException("Transfer executor is shutting down");
+        }
+        try {
+            return p.result.get(resultTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Transfer failed", e.getCause());
+        } catch (TimeoutException e) {
+            // ещё в очереди — снимаем, перевод не выполнится и его можно повторить;
+            // уже в пакете — исход неизвестен, повторять вслепую нельзя
+            if (queue.remove(p)) throw new BackpressureException("Transfer was not started in time");
+            throw new IllegalStateException("Transfer is still in progress, check history before retrying");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (queue.remove(p)) throw new BackpressureException("Interrupted while waiting for transfer");
+            throw new IllegalStateException("Interrupted while transfer is in progress, check history before retrying");
+        }
+    }
+
+    private void drainLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    // сначала забираем уже накопившееся, ждём только если очередь пуста
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) continue;
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(p -> p.result.completeExceptionally(new BackpressureException("Transfer executor stopped")));
+                return;
+            } catch (Throwable e) {
+                log.error("Group commit failed", e);
+                batch.forEach(p -> p.result.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void commit(List<Pending> batch) {
+        batchSize.record(batch.size());
+        if (batch.size() == 1) {
+            runSingle(batch.get(0));
+            return;
+        }
+        List<TransferRequest> reqs = new ArrayList<>(batch.size());
+        batch.forEach(p -> reqs.add(p.req));
+        List<TransactionDto> results;
+        try {
+            results = transferService.transferGroup(reqs);
+        } catch (RuntimeException e) {
+            // откат всего пакета: повторяем поштучно, чтобы ошибка досталась только своему вызывающему
+            fallbacks.increment();
+            log.debug("Group of {} transfers rolled back, retrying row by row: {}", batch.size(), e.getMessage());
+            batch.forEach(this::runSingle);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results.get(i));
+        }
+    }
+
+    private void runSingle(Pending p) {
+        try {
+            p.result.complete(transferService.transfer(p.req));
+        } catch (RuntimeException e) {
+            p.result.completeExceptionally(e);
+        }
+    }
+}
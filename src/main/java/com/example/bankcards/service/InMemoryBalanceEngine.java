@@ -0,0 +1,611 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.exception.BackpressureException;
+import com.example.bankcards.util.UuidOrder;
+import com.example.bankcards.util.UuidV7;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Балансы в памяти, единственный поток-писатель (в духе LMAX):
+// команды приходят через ограниченный кольцевой буфер, поток дописывает их в memory-mapped журнал
+// (BalanceJournal), применяет к состоянию и делает force один раз на пачку команд,
+// после чего отвечает вызывающим. Отдельный поток раз в flush-interval-ms переносит применённые операции
+// в cards/transactions одной транзакцией и сдвигает контрольную точку (balance_engine_checkpoint).
+// После рестарта состояние = строки cards (они соответствуют контрольной точке) + хвост журнала после неё.
+//
+// Карты подгружаются из БД при первом обращении. Балансы и история в БД отстают на интервал записи.
+// Пока движок включён, балансы не должен менять никто, кроме него.
+// Команда сначала пишется в журнал и только потом меняет балансы в памяти: сбой записи (журнал или
+// сброс заполненного журнала в БД) оставляет состояние прежним, в памяти нет ничего, чего нет в журнале.
+@Component
+@ConditionalOnProperty(name = "bank.balance.engine", havingValue = "in-memory")
+public class InMemoryBalanceEngine implements BalanceEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryBalanceEngine.class);
+    private static final String CHECKPOINT_ID = "in-memory";
+
+    static final class CardState {
+        final UUID ownerId;
+        CardStatus status;
+        long balance; // копейки
+        final String last4;
+
+        CardState(UUID ownerId, CardStatus status, long balance, String last4) {
+            this.ownerId = ownerId;
+            this.status = status;
+            this.balance = balance;
+            this.last4 = last4;
+        }
+    }
+
+    private enum Kind { TRANSFER, BATCH, TOP_UP, RELOAD, DELETE }
+
+    private static final class Command {
+        final Kind kind;
+        final List<TransferRequest> transfers;
+        final UUID cardId;
+        final long amount;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Command(Kind kind, List<TransferRequest> transfers, UUID cardId, long amount) {
+            this.kind = kind;
+            this.transfers = transfers;
+            this.cardId = cardId;
+            this.amount = amount;
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final CardAggregates aggregates;
+    private final CardService cardService;
+    private final BlockingQueue<Command> ring;
+    private final Path journalPath;
+    private final int journalSize;
+    private final int maxBatch;
+    private final long flushIntervalMs;
+    private final int flushBatch;
+    private final long resultTimeoutMs;
+
+    // состояние принадлежит потоку-писателю
+    private final Map<UUID, CardState> cards = new HashMap<>();
+    private final ConcurrentLinkedQueue<BalanceJournal.Entry> unflushed = new ConcurrentLinkedQueue<>();
+    // карты, чей статус сменился в БД: писатель перечитывает их перед следующим обращением
+    private final Set<UUID> stale = ConcurrentHashMap.newKeySet();
+    // карты в процессе удаления: операции по ним отклоняются
+    private final Set<UUID> deleting = ConcurrentHashMap.newKeySet();
+    private final Object flushLock = new Object();
+
+    private BalanceJournal journal;
+    private long nextSeq;
+    private Thread writer;
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    public InMemoryBalanceEngine(JdbcTemplate jdbc,
+                                 PlatformTransactionManager txManager,
+                                 CardAggregates aggregates,
+                                 CardService cardService,
+                                 MeterRegistry registry,
+                                 @Value("${bank.balance.in-memory.ring-size:65536}") int ringSize,
+                                 @Value("${bank.balance.in-memory.journal-path:./data/balance.journal}") String journalPath,
+                                 @Value("${bank.balance.in-memory.journal-size-mb:64}") int journalSizeMb,
+                                 @Value("${bank.balance.in-memory.max-batch:256}") int maxBatch,
+                                 @Value("${bank.balance.in-memory.flush-interval-ms:50}") long flushIntervalMs,
+                                 @Value("${bank.balance.in-memory.flush-batch:5000}") int flushBatch,
+                                 @Value("${bank.balance.in-memory.result-timeout-ms:30000}") long resultTimeoutMs) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.aggregates = aggregates;
+        this.cardService = cardService;
+        this.ring = new ArrayBlockingQueue<>(ringSize);
+        this.journalPath = Path.of(journalPath);
+        this.journalSize = journalSizeMb * 1024 * 1024;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushBatch = Math.max(1, flushBatch);
+        this.resultTimeoutMs = Math.max(1, resultTimeoutMs);
+        Gauge.builder("bank.balance.in-memory.ring.size", ring, BlockingQueue::size).register(registry);
+        Gauge.builder("bank.balance.in-memory.unflushed", unflushed, ConcurrentLinkedQueue::size).register(registry);
+    }
+
+    // восстановление: контрольная точка из БД + хвост журнала
+    @PostConstruct
+    public void start() throws IOException {
+        Long checkpoint = jdbc.queryForObject(
+                "select last_seq from balance_engine_checkpoint where id = ?", Long.class, CHECKPOINT_ID);
+        long lastSeq = checkpoint == null ? 0 : checkpoint;
+
+        journal = new BalanceJournal(journalPath, journalSize);
+        long maxSeq = lastSeq;
+        for (BalanceJournal.Entry e : journal.readAll()) {
+            if (e.seq <= lastSeq) continue;
+            replay(e);
+            unflushed.add(e);
+            maxSeq = Math.max(maxSeq, e.seq);
+        }
+        if (unflushed.isEmpty()) {
+            journal.reset();
+        }
+        nextSeq = maxSeq + 1;
+        log.info("In-memory balance engine recovered: checkpoint={}, replayed={}", lastSeq, unflushed.size());
+
+        running = true;
+        writer = new Thread(this::writeLoop, "balance-engine-writer");
+        writer.setDaemon(true);
+        writer.start();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "balance-engine-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        running = false;
+        if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(10));
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flushAll();
+        if (journal != null) journal.close();
+    }
+
+    @Override
+    public TransactionDto transfer(TransferRequest req) {
+        validate(req, "");
+        return (TransactionDto) submit(new Command(Kind.TRANSFER, List.of(req), null, 0));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<TransactionDto> transferBatch(UUID ownerId, List<TransferRequest> reqs) {
+        if (reqs == null || reqs.isEmpty()) {
+            throw new IllegalArgumentException("At least one transfer is required");
+        }
+        for (int i = 0; i < reqs.size(); i++) {
+            if (reqs.get(i) == null || !ownerId.equals(reqs.get(i).getOwnerId())) {
+                throw new IllegalArgumentException("Transfer #" + i + ": ownerId mismatch");
+            }
+            validate(reqs.get(i), "Transfer #" + i + ": ");
+        }
+        return (List<TransactionDto>) submit(new Command(Kind.BATCH, new ArrayList<>(reqs), null, 0));
+    }
+
+    @Override
+    public void topUp(UUID cardId, BigDecimal amount) {
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        submit(new Command(Kind.TOP_UP, null, cardId, cents(amount)));
+    }
+
+    // Писатель только проверяет нулевой баланс и закрывает карту для операций; запись её журнала в БД
+    // и само удаление идут в вызывающем потоке, не задерживая остальные команды
+    @Override
+    public boolean deleteCard(UUID cardId) {
+        submit(new Command(Kind.DELETE, null, cardId, 0));
+        try {
+            flushAll();
+            if (hasUnflushed(cardId)) {
+                throw new IllegalStateException("Card has operations not yet written to the database");
+            }
+            boolean removed = cardService.delete(cardId);
+            // строки больше нет — писатель выбросит карту из памяти при следующем обращении
+            stale.add(cardId);
+            return removed;
+        } finally {
+            deleting.remove(cardId);
+        }
+    }
+
+    // статус сменился (или карта удалена) — перечитываем его в потоке-писателе, баланс не трогаем.
+    // Отметка stale не теряется и при полном буфере: RELOAD лишь ускоряет перечитывание,
+    // без него писатель перечитает карту перед первой же операцией по ней
+    @TransactionalEventListener
+    public void onCardChanged(CardChangedEvent event) {
+        stale.add(event.getCardId());
+        ring.offer(new Command(Kind.RELOAD, null, event.getCardId(), 0));
+    }
+
+    private Object submit(Command cmd) {
+        if (!running) {
+            throw new IllegalStateException("Balance engine is not running");
+        }
+        if (!ring.offer(cmd)) {
+            throw new BackpressureException("Balance engine is overloaded");
+        }
+        try {
+            return cmd.result.get(resultTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Balance engine failed", e.getCause());
+        } catch (TimeoutException e) {
+            // ещё в буфере — снимаем, команда не выполнится и её можно повторить;
+            // уже у писателя — исход неизвестен
+            if (ring.remove(cmd)) throw new BackpressureException("Balance engine did not start the operation in time");
+            throw new IllegalStateException("Operation is still in progress, check the card before retrying");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (ring.remove(cmd)) throw new BackpressureException("Interrupted while waiting for balance engine");
+            throw new IllegalStateException("Interrupted while operation is in progress, check the card before retrying");
+        }
+    }
+
+    // ===== поток-писатель =====
+
+    private void writeLoop() {
+        List<Command> batch = new ArrayList<>(maxBatch);
+        while (running || !ring.isEmpty()) {
+            try {
+                Command first = ring.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                ring.drainTo(batch, maxBatch - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                // журнал недоступен — дальше работать нельзя
+                log.error("Balance engine writer failed, stopping", e);
+                running = false;
+                batch.forEach(c -> c.result.completeExceptionally(new IllegalStateException("Balance engine failed", e)));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Command> batch) {
+        List<Object> results = new ArrayList<>(batch.size());
+        for (Command cmd : batch) {
+            try {
+                results.add(apply(cmd));
+            } catch (RuntimeException e) {
+                results.add(e);
+            }
+        }
+        // одна запись на диск на всю пачку
+        journal.force();
+        for (int i = 0; i < batch.size(); i++) {
+            Object r = results.get(i);
+            if (r instanceof RuntimeException) batch.get(i).result.completeExceptionally((RuntimeException) r);
+            else batch.get(i).result.complete(r);
+        }
+    }
+
+    private Object apply(Command cmd) {
+        switch (cmd.kind) {
+            case TOP_UP: {
+                CardState c = card(cmd.cardId);
+                if (c == null) throw new IllegalArgumentException("Card not found");
+                checkNotDeleting(cmd.cardId);
+                if (c.status != CardStatus.ACTIVE) {
+                    throw new IllegalArgumentException("Card is not ACTIVE: " + c.status);
+                }
+                journal(List.of(BalanceJournal.Entry.topUp(cmd.cardId, cmd.amount, System.currentTimeMillis())));
+                c.balance += cmd.amount;
+                return null;
+            }
+            case TRANSFER:
+                check(cmd.transfers.get(0), new HashMap<>());
+                return commitTransfers(cmd.transfers).get(0);
+            case BATCH: {
+                // сначала проверяем весь пакет на черновых балансах: всё или ничего
+                Map<UUID, Long> scratch = new HashMap<>();
+                for (int i = 0; i < cmd.transfers.size(); i++) {
+                    try {
+                        check(cmd.transfers.get(i), scratch);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Transfer #" + i + ": " + e.getMessage(), e);
+                    } catch (EntityNotFoundException e) {
+                        throw new EntityNotFoundException("Transfer #" + i + ": " + e.getMessage());
+                    }
+                }
+                return commitTransfers(cmd.transfers);
+            }
+            case DELETE: {
+                CardState c = card(cmd.cardId);
+                if (c != null && c.balance != 0) {
+                    throw new IllegalStateException("Card has non-zero balance");
+                }
+                if (!deleting.add(cmd.cardId)) {
+                    throw new IllegalStateException("Card is being deleted");
+                }
+                return null;
+            }
+            case RELOAD:
+                refreshIfStale(cmd.cardId);
+                return null;
+            default:
+                throw new IllegalStateException("Unknown command " + cmd.kind);
+        }
+    }
+
+    // те же проверки и сообщения, что и в TransferService; scratch — изменения балансов внутри пакета
+    private void check(TransferRequest r, Map<UUID, Long> scratch) {
+        CardState from = card(r.getFromCardId());
+        if (from == null) throw new EntityNotFoundException("From-card not found");
+        CardState to = card(r.getToCardId());
+        if (to == null) throw new EntityNotFoundException("To-card not found");
+        checkNotDeleting(r.getFromCardId());
+        checkNotDeleting(r.getToCardId());
+        if (!from.ownerId.equals(r.getOwnerId()) || !to.ownerId.equals(r.getOwnerId())) {
+            throw new IllegalArgumentException("Cards must belong to the same user");
+        }
+        if (r.getFromCardId().equals(r.getToCardId())) {
+            throw new IllegalArgumentException("From and to cards must be different");
+        }
+        long amount = cents(r.getAmount());
+        long available = from.balance + scratch.getOrDefault(r.getFromCardId(), 0L);
+        if (available < amount) {
+            throw new IllegalArgumentException("Insufficient funds");
+        }
+        if (from.status != CardStatus.ACTIVE) {
+            throw new IllegalArgumentException("From card is not ACTIVE: " + from.status);
+        }
+        if (to.status != CardStatus.ACTIVE) {
+            throw new IllegalArgumentException("To card is not ACTIVE: " + to.status);
+        }
+        scratch.merge(r.getFromCardId(), -amount, Long::sum);
+        scratch.merge(r.getToCardId(), amount, Long::sum);
+    }
+
+    private void checkNotDeleting(UUID cardId) {
+        if (deleting.contains(cardId)) {
+            throw new IllegalStateException("Card is being deleted");
+        }
+    }
+
+    // переводы уже проверены: сначала все записи в журнал, потом балансы (это уже не может упасть)
+    private List<TransactionDto> commitTransfers(List<TransferRequest> reqs) {
+        long now = System.currentTimeMillis();
+        List<BalanceJournal.Entry> entries = new ArrayList<>(reqs.size());
+        for (TransferRequest r : reqs) {
+            entries.add(BalanceJournal.Entry.transfer(UuidV7.next(), r.getOwnerId(),
+                    r.getFromCardId(), r.getToCardId(), cents(r.getAmount()), now));
+        }
+        journal(entries);
+        List<TransactionDto> out = new ArrayList<>(entries.size());
+        for (BalanceJournal.Entry e : entries) {
+            CardState from = cards.get(e.fromCardId);
+            CardState to = cards.get(e.toCardId);
+            from.balance -= e.amount;
+            to.balance += e.amount;
+            out.add(new TransactionDto(e.txId, e.ownerId, mask(from.last4), mask(to.last4),
+                    BigDecimal.valueOf(e.amount, 2), TransactionStatus.SUCCESS, toLocal(e.createdAt), "OK"));
+        }
+        return out;
+    }
+
+    // записи команды попадают в журнал все или ни одной; состояние в памяти при этом не меняется
+    private void journal(List<BalanceJournal.Entry> entries) {
+        if (!journal.hasRoom(entries.size())) {
+            // журнал заполнен: дописываем всё применённое в БД и начинаем файл заново
+            journal.force();
+            flushAll();
+            journal.reset();
+            if (!journal.hasRoom(entries.size())) {
+                throw new IllegalArgumentException("Too many transfers for one batch");
+            }
+        }
+        int position = journal.position();
+        long seq = nextSeq;
+        try {
+            for (BalanceJournal.Entry e : entries) {
+                e.seq = nextSeq++;
+                journal.append(e);
+            }
+        } catch (RuntimeException e) {
+            journal.rewind(position);
+            nextSeq = seq;
+            throw e;
+        }
+        unflushed.addAll(entries);
+    }
+
+    private boolean hasUnflushed(UUID cardId) {
+        for (BalanceJournal.Entry e : unflushed) {
+            if (cardId.equals(e.toCardId) || cardId.equals(e.fromCardId)) return true;
+        }
+        return false;
+    }
+
+    private CardState card(UUID id) {
+        refreshIfStale(id);
+        CardState c = cards.get(id);
+        if (c == null) {
+            c = loadCard(id);
+            if (c != null) cards.put(id, c);
+        }
+        return c;
+    }
+
+    // статус карты из БД (баланс ведёт движок); строки нет — карта удалена, выбрасываем её из памяти
+    private void refreshIfStale(UUID id) {
+        if (!stale.remove(id)) return;
+        CardState cached = cards.get(id);
+        if (cached == null) return;
+        try {
+            CardState fresh = loadCard(id);
+            if (fresh == null) cards.remove(id);
+            else cached.status = fresh.status;
+        } catch (RuntimeException e) {
+            stale.add(id);
+            throw e;
+        }
+    }
+
+    // при восстановлении: изменения уже проверены до сбоя, просто применяем
+    private void replay(BalanceJournal.Entry e) {
+        CardState to = card(e.toCardId);
+        if (to != null) to.balance += e.amount;
+        if (e.type == BalanceJournal.TRANSFER) {
+            CardState from = card(e.fromCardId);
+            if (from != null) from.balance -= e.amount;
+        }
+    }
+
+    CardState loadCard(UUID id) {
+        List<CardState> found = jdbc.query(
+                "select owner_id, status, balance, last4 from cards where id = ?",
+                (rs, n) -> new CardState(
+                        rs.getObject("owner_id", UUID.class),
+                        CardStatus.valueOf(rs.getString("status")),
+                        rs.getBigDecimal("balance").movePointRight(2).longValueExact(),
+                        rs.getString("last4")),
+                id);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // ===== отложенная запись в БД =====
+
+    private void flushQuietly() {
+        try {
+            flushAll();
+        } catch (LostCardException e) {
+            // повтор не поможет: нужен разбор журнала и cards вручную
+            log.error("Write-behind flush stuck: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Write-behind flush failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    // строки карты нет в БД — дельта баланса потерялась бы молча, транзакция записи откатывается
+    static final class LostCardException extends IllegalStateException {
+        LostCardException(String message) {
+            super(message);
+        }
+    }
+
+    void flushAll() {
+        synchronized (flushLock) {
+            while (!unflushed.isEmpty()) {
+                flushChunk();
+            }
+        }
+    }
+
+    // одна транзакция: дельты балансов (в порядке id карт), строки transactions, агрегаты, контрольная точка.
+    // В агрегаты идут только пополнения: перевод между своими ACTIVE-картами итоги владельца не меняет
+    private void flushChunk() {
+        List<BalanceJournal.Entry> chunk = new ArrayList<>(flushBatch);
+        Iterator<BalanceJournal.Entry> it = unflushed.iterator();
+        while (it.hasNext() && chunk.size() < flushBatch) {
+            chunk.add(it.next());
+        }
+        Map<UUID, Long> deltas = new TreeMap<>(UuidOrder.COMPARATOR);
+        Map<UUID, BigDecimal> topUps = new HashMap<>();
+        List<Object[]> inserts = new ArrayList<>();
+        long maxSeq = 0;
+        for (BalanceJournal.Entry e : chunk) {
+            deltas.merge(e.toCardId, e.amount, Long::sum);
+            if (e.type == BalanceJournal.TRANSFER) {
+                deltas.merge(e.fromCardId, -e.amount, Long::sum);
+                inserts.add(new Object[]{e.txId, e.ownerId, e.fromCardId, e.toCardId,
+                        BigDecimal.valueOf(e.amount, 2), TransactionStatus.SUCCESS.name(),
+                        Timestamp.from(Instant.ofEpochMilli(e.createdAt)), "OK"});
+            } else {
+                topUps.merge(e.toCardId, BigDecimal.valueOf(e.amount, 2), BigDecimal::add);
+            }
+            maxSeq = Math.max(maxSeq, e.seq);
+        }
+        List<Object[]> updates = new ArrayList<>(deltas.size());
+        deltas.forEach((id, d) -> {
+            if (d != 0) updates.add(new Object[]{BigDecimal.valueOf(d, 2), id});
+        });
+        long checkpoint = maxSeq;
+        tx.executeWithoutResult(s -> {
+            int[] counts = jdbc.batchUpdate("update cards set balance = balance + ?, version = version + 1 where id = ?", updates);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    throw new LostCardException("Card " + updates.get(i)[1] + " is missing, balance delta "
+                            + updates.get(i)[0] + " was not written");
+                }
+            }
+            jdbc.batchUpdate("insert into transactions (id, owner_id, from_card_id, to_card_id, amount, status, created_at, message) "
+                    + "values (?, ?, ?, ?, ?, ?, ?, ?)", inserts);
+            aggregates.balancesChanged(topUps);
+            jdbc.update("update balance_engine_checkpoint set last_seq = ?, updated_at = now() where id = ?",
+                    checkpoint, CHECKPOINT_ID);
+        });
+        for (int i = 0; i < chunk.size(); i++) {
+            unflushed.poll();
+        }
+    }
+
+    // ===== утилиты =====
+
+    private static void validate(TransferRequest req, String prefix) {
+        if (req == null || req.getOwnerId() == null || req.getFromCardId() == null || req.getToCardId() == null) {
+            throw new IllegalArgumentException(prefix + "ownerId, fromCardId and toCardId are required");
+        }
+        if (req.getAmount() == null || req.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException(prefix + "Amount must be positive");
+        }
+        cents(req.getAmount());
+    }
+
+    private static long cents(BigDecimal amount) {
+        try {
+            return amount.setScale(2).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must have at most 2 decimal places");
+        }
+    }
+
+    private static String mask(String last4) {
+        return last4 == null ? "****" : "**** **** **** " + last4;
+    }
+
+    private static LocalDateTime toLocal(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+// балансы в БД: переводы через выбранный TransferExecutor, пополнение и удаление через CardService
+@Component
+@ConditionalOnProperty(name = "bank.balance.engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaBalanceEngine implements BalanceEngine {
+
+    private final TransferExecutor transferExecutor;
+    private final TransferService transferService;
+    private final CardService cardService;
+
+    public JpaBalanceEngine(TransferExecutor transferExecutor,
+                            TransferService transferService,
+                            CardService cardService) {
+        this.transferExecutor = transferExecutor;
+        this.transferService = transferService;
+        this.cardService = cardService;
+    }
+
+    @Override
+    public TransactionDto transfer(TransferRequest req) {
+        return transferExecutor.execute(req);
+    }
+
+    @Override
+    public List<TransactionDto> transferBatch(UUID ownerId, List<TransferRequest> reqs) {
+        return transferService.transferBatch(ownerId, reqs);
+    }
+
+    @Override
+    public void topUp(UUID cardId, BigDecimal amount) {
+        cardService.topUp(cardId, amount);
+    }
+
+    @Override
+    public boolean deleteCard(UUID cardId) {
+        return cardService.delete(cardId);
+    }
+}
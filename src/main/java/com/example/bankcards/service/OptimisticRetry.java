@@ -0,0 +1,15 @@
+package com.example.bankcards.service;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Метод повторяется OptimisticRetryAspect при конфликте версий, если bank.transfer.mode=OPTIMISTIC.
+// Метод должен сам открывать транзакцию: каждая попытка — отдельная транзакция.
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OptimisticRetry {
+    // имя операции для тега метрик
+    String value();
+}
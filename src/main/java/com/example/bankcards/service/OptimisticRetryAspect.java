@@ -0,0 +1,78 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Повтор @OptimisticRetry-методов при конфликте версий.
+// Порядок выше, чем у транзакционного advisor'а, поэтому аспект оборачивает транзакцию снаружи.
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class OptimisticRetryAspect {
+
+    private final TransferMode mode;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final MeterRegistry registry;
+
+    public OptimisticRetryAspect(@Value("${bank.transfer.mode:PESSIMISTIC}") TransferMode mode,
+                                 @Value("${bank.transfer.optimistic.max-attempts:5}") int maxAttempts,
+                                 @Value("${bank.transfer.optimistic.backoff-ms:5}") long backoffMs,
+                                 @Value("${bank.transfer.optimistic.max-backoff-ms:100}") long maxBackoffMs,
+                                 MeterRegistry registry) {
+        this.mode = mode;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.registry = registry;
+    }
+
+    @Around("@annotation(retry)")
+    public Object retry(ProceedingJoinPoint pjp, OptimisticRetry retry) throws Throwable {
+        if (mode != TransferMode.OPTIMISTIC) {
+            return pjp.proceed();
+        }
+        String op = retry.value();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Object result = pjp.proceed();
+                attempts(op).record(attempt);
+                return result;
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                if (attempt >= maxAttempts) {
+                    attempts(op).record(attempt);
+                    Counter.builder("bank.transfer.optimistic.exhausted").tag("operation", op)
+                            .register(registry).increment();
+                    throw new IllegalStateException("Concurrent update, please retry", e);
+                }
+                Counter.builder("bank.transfer.optimistic.retries").tag("operation", op)
+                        .register(registry).increment();
+                Thread.sleep(backoff(attempt));
+            }
+        }
+    }
+
+    // экспоненциальная задержка с полным джиттером: [0, min(max, base * 2^(attempt-1))]
+    private long backoff(int attempt) {
+        long cap = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private DistributionSummary attempts(String op) {
+        return DistributionSummary.builder("bank.transfer.optimistic.attempts").tag("operation", op)
+                .register(registry);
+    }
+}
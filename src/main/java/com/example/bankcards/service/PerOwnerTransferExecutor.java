@@ -0,0 +1,127 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.exception.BackpressureException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Переводы возможны только между картами одного владельца, поэтому вся конкуренция за балансы
+// сосредоточена внутри одного пользователя. Каждый ownerId закреплён (по хэшу) за однопоточной
+// полосой: переводы одного пользователя идут строго по очереди и не ждут блокировок строк друг друга,
+// а полосы разных пользователей работают параллельно. Переполненная полоса — 429.
+// Результат ждётся не дольше result-timeout-ms: перевод ещё в очереди — снимается (429),
+// уже выполняется — исход неизвестен (409), как и у GroupCommitTransferExecutor.
+@Component
+@ConditionalOnProperty(name = "bank.transfer.executor", havingValue = "per-owner")
+public class PerOwnerTransferExecutor implements TransferExecutor {
+
+    private final TransferService transferService;
+    private final List<ThreadPoolExecutor> lanes = new ArrayList<>();
+    private final Counter rejected;
+    private final long resultTimeoutMs;
+
+    public PerOwnerTransferExecutor(TransferService transferService,
+                                    MeterRegistry registry,
+                                    @Value("${bank.transfer.per-owner.lanes:16}") int laneCount,
+                                    @Value("${bank.transfer.per-owner.lane-capacity:256}") int laneCapacity,
+                                    @Value("${bank.transfer.per-owner.result-timeout-ms:30000}") long resultTimeoutMs) {
+        this.transferService = transferService;
+        this.resultTimeoutMs = Math.max(1, resultTimeoutMs);
+        for (int i = 0; i < Math.max(1, laneCount); i++) {
+            String name = "transfer-lane-" + i;
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, laneCapacity)),
+                    r -> {
+                        Thread t = new Thread(r, name);
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            lanes.add(lane);
+            Gauge.builder("bank.transfer.per-owner.queue.size", lane, l -> l.getQueue().size())
+                    .tag("lane", String.valueOf(i))
+                    .register(registry);
+        }
+        this.rejected = Counter.builder("bank.transfer.per-owner.rejected").register(registry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        lanes.forEach(ThreadPoolExecutor::shutdown);
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                // не начатые переводы отменяются — их вызывающие получают 429, а не ждут до таймаута
+                lane.shutdownNow().forEach(r -> ((Future<?>) r).cancel(false));
+            }
+        }
+    }
+
+    @Override
+    public TransactionDto execute(TransferRequest req) {
+        if (req == null || req.getOwnerId() == null) {
+            throw new IllegalArgumentException("ownerId is required");
+        }
+        ThreadPoolExecutor lane = laneFor(req.getOwnerId());
+        // кто первым взял флаг — полоса (выполнить) или ожидающий по таймауту (снять)
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<TransactionDto> f;
+        try {
+            f = lane.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) throw new CancellationException();
+                return transferService.transfer(req);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            if (lane.isShutdown()) throw new BackpressureException("Transfer executor stopped");
+            throw new BackpressureException("Too many pending transfers for this user");
+        }
+        try {
+            return f.get(resultTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Transfer failed", e.getCause());
+        } catch (CancellationException e) {
+            throw new BackpressureException("Transfer executor stopped");
+        } catch (TimeoutException e) {
+            if (withdraw(lane, f, claimed)) throw new BackpressureException("Transfer was not started in time");
+            throw new IllegalStateException("Transfer is still in progress, check history before retrying");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (withdraw(lane, f, claimed)) throw new BackpressureException("Interrupted while waiting for transfer");
+            throw new IllegalStateException("Interrupted while transfer is in progress, check history before retrying", e);
+        }
+    }
+
+    // снять можно только не начатый перевод; тогда он не выполнится, место в полосе освобождается
+    private static boolean withdraw(ThreadPoolExecutor lane, Future<?> f, AtomicBoolean claimed) {
+        if (!claimed.compareAndSet(false, true)) return false;
+        f.cancel(false);
+        lane.remove((Runnable) f);
+        return true;
+    }
+
+    ThreadPoolExecutor laneFor(UUID ownerId) {
+        int h = ownerId.hashCode();
+        h ^= (h >>> 16);
+        return lanes.get(Math.floorMod(h, lanes.size()));
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Выгрузка истории переводов целиком (аудит): строки идут из курсора JDBC прямо в ответ.
+// Курсор forward-only с fetch-size строк за раз внутри read-only транзакции — PostgreSQL
+// отдаёт результат порциями только при выключенном autocommit, так что память не зависит от числа строк.
+// Порядок — от старых к новым (created_at, id).
+@Service
+public class TransactionExportService {
+
+    private static final String COLUMNS = """
+           select h.id, h.owner_id, f.last4 as from_last4, c.last4 as to_last4,
+                  h.amount, h.status, h.created_at, h.message
+           """;
+    private static final String JOINS = """
+           join cards f on f.id = h.from_card_id
+           join cards c on c.id = h.to_card_id
+           """;
+    private static final String ORDER = """
+           order by h.created_at, h.id
+           """;
+
+    // по пользователю — индекс (owner_id, created_at desc, id desc), обход в обратную сторону
+    static final String USER_SQL = COLUMNS + """
+           from transactions h
+           """ + JOINS + """
+           where h.owner_id = ? and h.created_at >= ? and h.created_at < ?
+           """ + ORDER;
+
+    // по карте — как в истории, две ветки UNION ALL по индексам from_card_id и to_card_id
+    static final String CARD_SQL = COLUMNS + """
+           from (
+             select t.* from transactions t
+             where t.from_card_id = ? and t.created_at >= ? and t.created_at < ?
+             union all
+             select t.* from transactions t
+             where t.to_card_id = ? and t.from_card_id <> ? and t.created_at >= ? and t.created_at < ?
+           ) h
+           """ + JOINS + ORDER;
+
+    private static final String CSV_HEADER = "id,owner,fromMasked,toMasked,amount,status,createdAt,message";
+
+    private static final LocalDateTime NO_LOWER_BOUND = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime NO_UPPER_BOUND = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate readOnly;
+    private final ObjectWriter json;
+
+    @Value("${bank.history.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    public TransactionExportService(JdbcTemplate jdbc, PlatformTransactionManager txManager, ObjectMapper objectMapper) {
+        this.jdbc = jdbc;
+        this.readOnly = new TransactionTemplate(txManager);
+        this.readOnly.setReadOnly(true);
+        // одна строка на перевод, без сброса буфера после каждой записи
+        this.json = objectMapper.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // что выгружать; проверяется до начала ответа, чтобы ошибка параметров ушла обычным 400
+    public static final class Export {
+        private final String sql;
+        private final Object[] args;
+        private final String name;
+
+        private Export(String sql, Object[] args, String name) {
+            this.sql = sql;
+            this.args = args;
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+    }
+
+    // from/to — включительно, по дате created_at; null — без ограничения
+    public Export byUser(UUID userId, LocalDate from, LocalDate to) {
+        LocalDateTime lo = lower(from, to);
+        LocalDateTime hi = upper(to);
+        return new Export(USER_SQL, new Object[]{userId, lo, hi}, "transactions-user-" + userId);
+    }
+
+    public Export byCard(UUID cardId, LocalDate from, LocalDate to) {
+        LocalDateTime lo = lower(from, to);
+        LocalDateTime hi = upper(to);
+        return new Export(CARD_SQL, new Object[]{cardId, lo, hi, cardId, cardId, lo, hi}, "transactions-card-" + cardId);
+    }
+
+    private static LocalDateTime lower(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("'from' must not be after 'to'");
+        }
+        return from == null ? NO_LOWER_BOUND : from.atStartOfDay();
+    }
+
+    private static LocalDateTime upper(LocalDate to) {
+        return to == null ? NO_UPPER_BOUND : to.plusDays(1).atStartOfDay();
+    }
+
+    // пишет выгрузку в out (не закрывая его); возвращает число строк
+    public long write(Export export, ExportFormat format, OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        JsonGenerator gen = json.getFactory().createGenerator(w);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        gen.setRootValueSeparator(null); // строки разделяет только '\n'
+        if (format == ExportFormat.CSV) {
+            w.write(CSV_HEADER);
+            w.write('\n');
+        }
+        long[] rows = {0};
+        try {
+            readOnly.executeWithoutResult(s -> jdbc.query(con -> {
+                PreparedStatement ps = con.prepareStatement(export.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                for (int i = 0; i < export.args.length; i++) {
+                    ps.setObject(i + 1, export.args[i]);
+                }
+                return ps;
+            }, rs -> {
+                TransactionDto dto = map(rs);
+                try {
+                    if (format == ExportFormat.CSV) {
+                        writeCsv(w, dto);
+                    } else {
+                        json.writeValue(gen, dto);
+                        gen.writeRaw('\n');
+                    }
+                } catch (IOException e) {
+                    // клиент закрыл соединение — курсор и транзакция закрываются вместе с исключением
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        gen.flush();
+        w.flush();
+        return rows[0];
+    }
+
+    private static TransactionDto map(ResultSet rs) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        return new TransactionDto(
+                rs.getObject("id", UUID.class),
+                rs.getObject("owner_id", UUID.class),
+                Card.mask(rs.getString("from_last4")),
+                Card.mask(rs.getString("to_last4")),
+                rs.getBigDecimal("amount"),
+                TransactionStatus.valueOf(rs.getString("status")),
+                createdAt == null ? null : createdAt.toLocalDateTime(),
+                rs.getString("message"));
+    }
+
+    private static void writeCsv(Writer w, TransactionDto t) throws IOException {
+        w.write(String.valueOf(t.getId()));
+        w.write(',');
+        w.write(String.valueOf(t.getOwner()));
+        w.write(',');
+        w.write(csv(t.getFromMasked()));
+        w.write(',');
+        w.write(csv(t.getToMasked()));
+        w.write(',');
+        w.write(t.getAmount().toPlainString());
+        w.write(',');
+        w.write(t.getStatus().name());
+        w.write(',');
+        w.write(t.getCreatedAt() == null ? "" : t.getCreatedAt().toString());
+        w.write(',');
+        w.write(csv(t.getMessage()));
+        w.write('\n');
+    }
+
+    // RFC 4180: поле с запятой, кавычкой или переводом строки — в кавычках, кавычки удваиваются
+    static String csv(String value) {
+        if (value == null) return "";
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+}
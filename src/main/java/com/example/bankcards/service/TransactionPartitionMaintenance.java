@@ -0,0 +1,227 @@
+package com.example.bankcards.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Обслуживание месячных секций transactions (changelog-021), раз в check-interval-minutes и при старте:
+//  - создаёт секции на premake-months месяцев вперёд — секции по умолчанию нет, вставка в месяц
+//    без секции упала бы;
+//  - секции старше retention-months отсоединяет (DETACH ... CONCURRENTLY — переводы и чтение не ждут)
+//    и переносит в схему transactions_archive. Данные остаются в БД вместе с внешними ключами,
+//    так что карту с архивной историей по-прежнему нельзя удалить.
+// DDL ждёт блокировку не дольше lock-timeout-ms, чтобы не выстроить за собой очередь из переводов;
+// не успевший шаг повторится в следующий проход. Из нескольких экземпляров приложения проход делает тот,
+// кто взял pg_try_advisory_lock. На H2 и на несекционированной таблице задача ничего не делает.
+@Component
+@ConditionalOnProperty(name = "bank.transactions.partitions.maintenance", havingValue = "true", matchIfMissing = true)
+public class TransactionPartitionMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionPartitionMaintenance.class);
+
+    static final String PREFIX = "transactions_p";
+    static final String ARCHIVE_SCHEMA = "transactions_archive";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final long LOCK_KEY = 0x7472616E73L; // "trans"
+
+    private final JdbcTemplate jdbc;
+    private final int premakeMonths;
+    private final int retentionMonths;
+    private final long checkIntervalMinutes;
+    private final long lockTimeoutMs;
+
+    private ScheduledExecutorService scheduler;
+
+    public TransactionPartitionMaintenance(JdbcTemplate jdbc,
+                                           @Value("${bank.transactions.partitions.premake-months:3}") int premakeMonths,
+                                           @Value("${bank.transactions.partitions.retention-months:0}") int retentionMonths,
+                                           @Value("${bank.transactions.partitions.check-interval-minutes:360}") long checkIntervalMinutes,
+                                           @Value("${bank.transactions.partitions.lock-timeout-ms:5000}") long lockTimeoutMs) {
+        this.jdbc = jdbc;
+        this.premakeMonths = Math.max(1, premakeMonths);
+        this.retentionMonths = Math.max(0, retentionMonths);
+        this.checkIntervalMinutes = Math.max(1, checkIntervalMinutes);
+        this.lockTimeoutMs = Math.max(0, lockTimeoutMs);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transactions-partitions");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runQuietly, 0, checkIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            log.error("Transactions partition maintenance failed", e);
+        }
+    }
+
+    // один проход (ручной запуск); null — проход не нужен или его делает другой экземпляр
+    public Plan runOnce() {
+        return jdbc.execute((ConnectionCallback<Plan>) con -> {
+            if (!"PostgreSQL".equals(con.getMetaData().getDatabaseProductName())) return null;
+            // DETACH CONCURRENTLY не работает внутри транзакции — каждый шаг отдельным autocommit-оператором
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(true);
+            try (Statement st = con.createStatement()) {
+                if (!partitioned(st) || !queryBoolean(st, "select pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+                    return null;
+                }
+                try {
+                    st.execute("set lock_timeout = " + lockTimeoutMs);
+                    return maintain(st);
+                } finally {
+                    st.execute("reset lock_timeout");
+                    st.execute("select pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private Plan maintain(Statement st) throws SQLException {
+        Set<YearMonth> attached = new TreeSet<>();
+        Set<YearMonth> pending = new TreeSet<>();
+        Set<YearMonth> detached = new TreeSet<>();
+        // секции transactions и отсоединённые, но ещё не перенесённые в архив таблицы той же схемы
+        try (ResultSet rs = st.executeQuery("""
+                select c.relname, i.inhrelid is not null, coalesce(i.inhdetachpending, false)
+                from pg_class c
+                left join pg_inherits i on i.inhrelid = c.oid and i.inhparent = 'transactions'::regclass
+                where c.relkind = 'r'
+                  and c.relnamespace = (select relnamespace from pg_class where oid = 'transactions'::regclass)
+                  and c.relname ~ '^transactions_p[0-9]{6}$'
+                """)) {
+            while (rs.next()) {
+                YearMonth month = month(rs.getString(1));
+                if (!rs.getBoolean(2)) detached.add(month);
+                else if (rs.getBoolean(3)) pending.add(month);
+                else attached.add(month);
+            }
+        }
+        Plan plan = plan(attached, pending, detached, YearMonth.now(), premakeMonths, retentionMonths);
+
+        for (YearMonth m : plan.getCreate()) {
+            step(st, "create " + name(m), String.format(
+                    "create table %s partition of transactions for values from ('%s') to ('%s')",
+                    name(m), m.atDay(1), m.plusMonths(1).atDay(1)));
+        }
+        for (YearMonth m : plan.getArchive()) {
+            // прерванный DETACH CONCURRENTLY оставляет секцию в состоянии pending — его нужно довести
+            if (pending.contains(m)
+                    && !step(st, "finalize detach " + name(m), "alter table transactions detach partition " + name(m) + " finalize")) {
+                continue;
+            }
+            if (attached.contains(m)
+                    && !step(st, "detach " + name(m), "alter table transactions detach partition " + name(m) + " concurrently")) {
+                continue;
+            }
+            step(st, "archive " + name(m), "alter table " + name(m) + " set schema " + ARCHIVE_SCHEMA);
+        }
+        if (!plan.isEmpty()) {
+            log.info("Transactions partitions: created {}, archived {}", plan.getCreate(), plan.getArchive());
+        }
+        return plan;
+    }
+
+    // сбой одного шага (чаще всего lock_timeout) не останавливает проход
+    private static boolean step(Statement st, String what, String sql) {
+        try {
+            st.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            log.warn("Transactions partitions: {} failed, will retry: {}", what, e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean partitioned(Statement st) throws SQLException {
+        return queryBoolean(st, "select exists (select 1 from pg_partitioned_table where partrelid = to_regclass('transactions'))");
+    }
+
+    private static boolean queryBoolean(Statement st, String sql) throws SQLException {
+        try (ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    static String name(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    static YearMonth month(String name) {
+        return YearMonth.parse(name.substring(PREFIX.length()), SUFFIX);
+    }
+
+    // что сделать в месяце now: создать недостающие секции [now, now + premake], отправить в архив
+    // всё старше retention полных месяцев до now (0 — ничего не архивировать)
+    static Plan plan(Set<YearMonth> attached, Set<YearMonth> pending, Set<YearMonth> detached,
+                     YearMonth now, int premake, int retention) {
+        List<YearMonth> create = new ArrayList<>();
+        for (int i = 0; i <= premake; i++) {
+            YearMonth m = now.plusMonths(i);
+            if (!attached.contains(m) && !pending.contains(m) && !detached.contains(m)) create.add(m);
+        }
+        Set<YearMonth> archive = new TreeSet<>();
+        if (retention > 0) {
+            YearMonth oldestKept = now.minusMonths(retention);
+            for (Set<YearMonth> months : List.of(attached, pending, detached)) {
+                for (YearMonth m : months) {
+                    if (m.isBefore(oldestKept)) archive.add(m);
+                }
+            }
+        }
+        return new Plan(create, new ArrayList<>(archive));
+    }
+
+    public static final class Plan {
+        private final List<YearMonth> create;
+        private final List<YearMonth> archive;
+
+        Plan(List<YearMonth> create, List<YearMonth> archive) {
+            this.create = Collections.unmodifiableList(create);
+            this.archive = Collections.unmodifiableList(archive);
+        }
+
+        public List<YearMonth> getCreate() { return create; }
+        public List<YearMonth> getArchive() { return archive; }
+        public boolean isEmpty() { return create.isEmpty() && archive.isEmpty(); }
+    }
+}
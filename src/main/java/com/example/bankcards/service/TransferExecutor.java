@@ -0,0 +1,9 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+
+// Как выполняется одиночный перевод из POST /api/transfers (bank.transfer.executor)
+public interface TransferExecutor {
+    TransactionDto execute(TransferRequest req);
+}
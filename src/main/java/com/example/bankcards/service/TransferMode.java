@@ -0,0 +1,11 @@
+package com.example.bankcards.service;
+
+// Способ изменения балансов в transfer/topUp (bank.transfer.mode)
+public enum TransferMode {
+    // SELECT ... FOR UPDATE, изменение баланса в Java, flush при коммите
+    PESSIMISTIC,
+    // UPDATE cards SET balance = balance ± :amt WHERE ... — успех по числу изменённых строк
+    CONDITIONAL,
+    // чтение без блокировки, проверка @Version при коммите, повтор с backoff (OptimisticRetryAspect)
+    OPTIMISTIC
+}
@@ -1,6 +1,7 @@
 package com.example.bankcards.service;
 
 import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransactionSlice;
 import com.example.bankcards.dto.TransferRequest;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.Transaction;
@@ -8,14 +9,27 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.entity.enums.TransactionStatus;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.TransactionHistoryRow;
 import com.example.bankcards.repository.TransactionRepository;
 import com.example.bankcards.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
+import com.example.bankcards.util.UuidOrder;
+import com.example.bankcards.util.UuidV7;
 import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -26,6 +40,15 @@ public class TransferService {
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
 
+    @Value("${bank.transfer.mode:PESSIMISTIC}")
+    private TransferMode mode = TransferMode.PESSIMISTIC;
+
+    @Value("${bank.transfer.batch.max-size:500}")
+    private int maxBatchSize = 500;
+
+    @Value("${bank.history.max-page-size:500}")
+    private int historyMaxPageSize = 500;
+
     public TransferService(CardRepository cardRepository,
                            TransactionRepository transactionRepository,
                            UserRepository userRepository) {
@@ -35,6 +58,7 @@ public class TransferService {
     }
 
     // перевод средств
+    @OptimisticRetry("transfer")
     @Transactional
     public TransactionDto transfer(TransferRequest req) {
         if (req == null) {
@@ -46,29 +70,185 @@ public class TransferService {
         if (req.getAmount() == null || req.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
-        User owner = userRepository.findById(req.getOwnerId())
-                .orElseThrow(() -> new EntityNotFoundException("User not found"));
+        if (mode == TransferMode.CONDITIONAL) {
+            return transferConditional(req);
+        }
+        // владелец нужен только как ссылка: его id сверяется с owner_id заблокированных карт,
+        // поэтому отдельный SELECT по users не делаем. Это и есть проверка прав на карты.
+        User owner = userRepository.getReferenceById(req.getOwnerId());
+
+        // обе карты одним запросом в порядке id, как и пакетные переводы, чтобы не было взаимоблокировок
+        Map<UUID, Card> cards = load(req.getFromCardId(), req.getToCardId());
+        Card from = cards.get(req.getFromCardId());
+        Card to = cards.get(req.getToCardId());
+        if (from == null) throw new EntityNotFoundException("From-card not found");
+        if (to == null) throw new EntityNotFoundException("To-card not found");
+
+        Transaction t = apply(owner, from, to, req.getAmount());
+        transactionRepository.save(t);
+        return map(t);
+    }
+
+    // OPTIMISTIC: без блокировки, конфликт версий обнаружится при коммите
+    private Map<UUID, Card> load(UUID fromId, UUID toId) {
+        Set<UUID> ids = new TreeSet<>(UuidOrder.COMPARATOR);
+        ids.add(fromId);
+        ids.add(toId);
+        Iterable<Card> found = mode == TransferMode.OPTIMISTIC
+                ? cardRepository.findAllById(ids)
+                : cardRepository.findAllByIdForUpdate(new ArrayList<>(ids));
+        Map<UUID, Card> cards = new HashMap<>();
+        for (Card c : found) {
+            cards.put(c.getId(), c);
+        }
+        return cards;
+    }
+
+    // перевод условными UPDATE: блокировки строк держатся только на время самих команд.
+    // Команды идут в порядке id карт, чтобы встречные переводы не взаимоблокировались;
+    // при отказе второй команды исключение откатывает первую.
+    private TransactionDto transferConditional(TransferRequest req) {
+        UUID ownerId = req.getOwnerId();
+        UUID fromId = req.getFromCardId();
+        UUID toId = req.getToCardId();
+        BigDecimal amount = req.getAmount();
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("From and to cards must be different");
+        }
+        String fromLast4;
+        String toLast4;
+        if (UuidOrder.COMPARATOR.compare(fromId, toId) < 0) {
+            fromLast4 = debit(fromId, ownerId, amount);
+            toLast4 = credit(toId, ownerId, amount);
+        } else {
+            toLast4 = credit(toId, ownerId, amount);
+            fromLast4 = debit(fromId, ownerId, amount);
+        }
+
+        // карты и владелец уже проверены условиями UPDATE: перевод ссылается на них без SELECT,
+        // маски — из last4, который вернули сами UPDATE
+        Transaction t = new Transaction();
+        t.setOwner(userRepository.getReferenceById(ownerId));
+        t.setFromCard(cardRepository.getReferenceById(fromId));
+        t.setToCard(cardRepository.getReferenceById(toId));
+        t.setAmount(amount);
+        t.setStatus(TransactionStatus.SUCCESS);
+        t.setMessage("OK");
+        transactionRepository.save(t);
+        return new TransactionDto(t.getId(), ownerId, Card.mask(fromLast4), Card.mask(toLast4),
+                t.getAmount(), t.getStatus(), t.getCreatedAt(), t.getMessage());
+    }
+
+    private String debit(UUID cardId, UUID ownerId, BigDecimal amount) {
+        return cardRepository.debitIfActive(cardId, ownerId, amount)
+                .orElseThrow(() -> rejected(cardId, ownerId, "From", true));
+    }
+
+    private String credit(UUID cardId, UUID ownerId, BigDecimal amount) {
+        return cardRepository.creditIfActive(cardId, ownerId, amount)
+                .orElseThrow(() -> rejected(cardId, ownerId, "To", false));
+    }
+
+    // UPDATE не затронул строку — выясняем причину для ответа клиенту
+    private RuntimeException rejected(UUID cardId, UUID ownerId, String side, boolean debit) {
+        Card c = cardRepository.findById(cardId).orElse(null);
+        if (c == null) {
+            return new EntityNotFoundException(side + "-card not found");
+        }
+        if (!c.getOwner().getId().equals(ownerId)) {
+            return new IllegalArgumentException("Cards must belong to the same user");
+        }
+        if (c.getStatus() != CardStatus.ACTIVE) {
+            return new IllegalArgumentException(side + " card is not ACTIVE: " + c.getStatus());
+        }
+        return new IllegalArgumentException(debit ? "Insufficient funds" : side + " card update rejected");
+    }
+
+    // пакетный перевод: все карты блокируются одним запросом в порядке id, всё в одной транзакции
+    @Transactional
+    public List<TransactionDto> transferBatch(UUID ownerId, List<TransferRequest> reqs) {
+        if (reqs == null || reqs.isEmpty()) {
+            throw new IllegalArgumentException("At least one transfer is required");
+        }
+        if (reqs.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Too many transfers in batch (max " + maxBatchSize + ")");
+        }
+        for (int i = 0; i < reqs.size(); i++) {
+            if (reqs.get(i) == null || !ownerId.equals(reqs.get(i).getOwnerId())) {
+                throw new IllegalArgumentException("Transfer #" + i + ": ownerId mismatch");
+            }
+        }
+        return applyLocked(reqs).stream().map(this::map).collect(Collectors.toList());
+    }
+
+    // групповой коммит (GroupCommitTransferExecutor): переводы разных пользователей в одной транзакции.
+    // Ошибка любого элемента откатывает всю группу — вызывающий повторяет её поштучно.
+    @Transactional
+    public List<TransactionDto> transferGroup(List<TransferRequest> reqs) {
+        return applyLocked(reqs).stream().map(this::map).collect(Collectors.toList());
+    }
+
+    // все карты блокируются одним запросом в порядке id, затем переводы применяются по очереди
+    private List<Transaction> applyLocked(List<TransferRequest> reqs) {
+        Set<UUID> ids = new TreeSet<>(UuidOrder.COMPARATOR);
+        Set<UUID> ownerIds = new HashSet<>();
+        for (int i = 0; i < reqs.size(); i++) {
+            TransferRequest r = reqs.get(i);
+            if (r == null || r.getOwnerId() == null || r.getFromCardId() == null || r.getToCardId() == null) {
+                throw new IllegalArgumentException("Transfer #" + i + ": ownerId, fromCardId and toCardId are required");
+            }
+            if (r.getAmount() == null || r.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+                throw new IllegalArgumentException("Transfer #" + i + ": Amount must be positive");
+            }
+            ownerIds.add(r.getOwnerId());
+            ids.add(r.getFromCardId());
+            ids.add(r.getToCardId());
+        }
+        Map<UUID, User> owners = new HashMap<>();
+        for (User u : userRepository.findAllById(ownerIds)) {
+            owners.put(u.getId(), u);
+        }
 
-        Card from = cardRepository.findByIdForUpdate(req.getFromCardId())
-                .orElseThrow(() -> new EntityNotFoundException("From-card not found"));
-        Card to = cardRepository.findByIdForUpdate(req.getToCardId())
-                .orElseThrow(() -> new EntityNotFoundException("To-card not found"));
+        Map<UUID, Card> locked = new HashMap<>();
+        for (Card c : cardRepository.findAllByIdForUpdate(new ArrayList<>(ids))) {
+            locked.put(c.getId(), c);
+        }
 
+        List<Transaction> batch = new ArrayList<>(reqs.size());
+        for (int i = 0; i < reqs.size(); i++) {
+            TransferRequest r = reqs.get(i);
+            User owner = owners.get(r.getOwnerId());
+            Card from = locked.get(r.getFromCardId());
+            Card to = locked.get(r.getToCardId());
+            if (owner == null) throw new EntityNotFoundException("Transfer #" + i + ": User not found");
+            if (from == null) throw new EntityNotFoundException("Transfer #" + i + ": From-card not found");
+            if (to == null) throw new EntityNotFoundException("Transfer #" + i + ": To-card not found");
+            try {
+                batch.add(apply(owner, from, to, r.getAmount()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Transfer #" + i + ": " + e.getMessage(), e);
+            }
+        }
+        // при hibernate.jdbc.batch_size вставки уходят одним JDBC-батчем
+        transactionRepository.saveAll(batch);
+        return batch;
+    }
+
+    // проверки и изменение балансов на уже заблокированных картах
+    private Transaction apply(User owner, Card from, Card to, BigDecimal amount) {
         if (!from.getOwner().getId().equals(owner.getId()) || !to.getOwner().getId().equals(owner.getId())) {
             throw new IllegalArgumentException("Cards must belong to the same user");
         }
         if (from.getId().equals(to.getId())) {
             throw new IllegalArgumentException("From and to cards must be different");
         }
-        if (from.getBalance().compareTo(req.getAmount()) < 0) {
+        if (from.getBalance().compareTo(amount) < 0) {
             throw new IllegalArgumentException("Insufficient funds");
         }
 
         requireActive(from, "From");
         requireActive(to,   "To");
 
-        BigDecimal amount = req.getAmount();
-
         from.setBalance(from.getBalance().subtract(amount));
         to.setBalance(to.getBalance().add(amount));
 
@@ -79,18 +259,28 @@ public class TransferService {
         t.setAmount(amount);
         t.setStatus(TransactionStatus.SUCCESS);
         t.setMessage("OK");
+        return t;
+    }
 
-        transactionRepository.save(t);
-        return new TransactionDto(
-                t.getId(), owner.getId(), from.getMaskedNumber(), to.getMaskedNumber(),
-                t.getAmount(), t.getStatus(), t.getCreatedAt(), t.getMessage()
-        );
+    // История по карте страницами: before — id последнего перевода предыдущей страницы
+    @Transactional
+    public TransactionSlice getByCard(UUID cardId, UUID before, int size) {
+        int limit = pageLimit(size);
+        Cursor c = cursor(before);
+        return slice(transactionRepository.findPageByCardId(cardId, c.ts, c.id, limit + 1), limit);
     }
 
-    public List<TransactionDto> getByCard(UUID cardId) {
-        return transactionRepository.findByCardId(cardId).stream()
-                .map(this::map)
-                .collect(Collectors.toList());
+    private static TransactionDto map(TransactionHistoryRow r) {
+        return new TransactionDto(
+                r.getId(),
+                r.getOwnerId(),
+                Card.mask(r.getFromLast4()),
+                Card.mask(r.getToLast4()),
+                r.getAmount(),
+                r.getStatus(),
+                r.getCreatedAt(),
+                r.getMessage()
+        );
     }
 
     private TransactionDto map(Transaction t) {
@@ -106,10 +296,53 @@ public class TransferService {
         );
     }
 
-    public List<TransactionDto> getByUser(UUID userId) {
-        return transactionRepository.findByUserId(userId).stream()
-                .map(this::map)
-                .collect(Collectors.toList());
+    // История пользователя страницами: before — id последнего перевода предыдущей страницы
+    @Transactional
+    public TransactionSlice getByUser(UUID userId, UUID before, int size) {
+        int limit = pageLimit(size);
+        Cursor c = cursor(before);
+        return slice(transactionRepository.findPageByUserId(userId, c.ts, c.id, limit + 1), limit);
+    }
+
+    // позиция в порядке (created_at desc, id desc); без курсора — «позже любого перевода»
+    private static final class Cursor {
+        final LocalDateTime ts;
+        final UUID id;
+
+        Cursor(LocalDateTime ts, UUID id) {
+            this.ts = ts;
+            this.id = id;
+        }
+    }
+
+    private static final Cursor FIRST_PAGE = new Cursor(LocalDateTime.of(9999, 12, 31, 0, 0), new UUID(-1L, -1L));
+
+    // id перевода — UUIDv7, created_at ставится рядом со временем в id: сначала ищем в окне вокруг него
+    // (одна-две месячные секции), без границ — только для старых v4 id и на случай сбитых часов
+    private static final Duration CURSOR_WINDOW = Duration.ofDays(1);
+
+    private Cursor cursor(UUID before) {
+        if (before == null) return FIRST_PAGE;
+        Optional<LocalDateTime> found = Optional.empty();
+        if (before.version() == 7) {
+            LocalDateTime around = UuidV7.localDateTime(before);
+            found = transactionRepository.findCreatedAtBetween(before, around.minus(CURSOR_WINDOW), around.plus(CURSOR_WINDOW));
+        }
+        LocalDateTime ts = found.or(() -> transactionRepository.findCreatedAt(before))
+                .orElseThrow(() -> new IllegalArgumentException("Unknown cursor: " + before));
+        return new Cursor(ts, before);
+    }
+
+    private int pageLimit(int size) {
+        if (size < 1) throw new IllegalArgumentException("Page size must be positive");
+        return Math.min(size, historyMaxPageSize);
+    }
+
+    // запрашивается limit+1 строк: лишняя означает, что есть следующая страница
+    private TransactionSlice slice(List<TransactionHistoryRow> rows, int limit) {
+        List<TransactionDto> items = rows.stream().limit(limit).map(TransferService::map).collect(Collectors.toList());
+        UUID next = rows.size() > limit ? items.get(limit - 1).getId() : null;
+        return new TransactionSlice(items, next);
     }
 
     // активна ли карта
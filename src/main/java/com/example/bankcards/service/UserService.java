@@ -5,10 +5,13 @@ import com.example.bankcards.dto.UserDto;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.RoleType;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.CachingUserDetailsService;
 import jakarta.persistence.EntityNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.UUID;
@@ -19,11 +22,14 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final CachingUserDetailsService userDetailsCache;
 
     public UserService(UserRepository userRepository,
-                       PasswordEncoder passwordEncoder) {
+                       PasswordEncoder passwordEncoder,
+                       CachingUserDetailsService userDetailsCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userDetailsCache = userDetailsCache;
     }
 
     // все пользователи
@@ -47,6 +53,7 @@ public class UserService {
         u.setRole(admin ? RoleType.ADMIN : RoleType.USER);
 
         User saved = userRepository.save(u);
+        userDetailsCache.evict(saved.getUsername());
         return new UserDto(saved.getId(), saved.getUsername(),
                 saved.getRole() != null ? saved.getRole().name() : null);
     }
@@ -61,7 +68,22 @@ public class UserService {
                 .orElseThrow(() -> new EntityNotFoundException("User not found with username: " + username));
     }
 
+    // кэш сбрасывается только после коммита: до него параллельная аутентификация ещё видит строку
+    // и снова положила бы удаляемого пользователя в кэш
+    @Transactional
     public void delete(UUID id) {
+        String username = userRepository.findById(id).map(User::getUsername).orElse(null);
         userRepository.deleteById(id);
+        if (username == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userDetailsCache.evict(username);
+                }
+            });
+        } else {
+            userDetailsCache.evict(username);
+        }
     }
 }
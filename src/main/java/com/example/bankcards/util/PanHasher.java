@@ -1,29 +1,64 @@
 package com.example.bankcards.util;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 
+@Component
 public class PanHasher {
-    // секретный «перец» из настроек; можно reuse encrypt.secret, но лучше отдельный
-    private static final String PEPPER = System.getProperty("pan.pepper",
-            System.getenv().getOrDefault("PAN_PEPPER", "change-me-please"));
 
+    private static final String ALG = "HmacSHA256";
+
+    // Mac не потокобезопасен, а getInstance+init дорогие: по одному уже инициализированному Mac на поток.
+    // doFinal сбрасывает Mac, ключ остаётся.
+    private final ThreadLocal<Mac> mac;
+
+    // секретный «перец» из настроек (pan.pepper / PAN_PEPPER); можно reuse encrypt.secret, но лучше отдельный
+    public PanHasher(@Value("${pan.pepper}") String pepper) {
+        if (pepper == null || pepper.isBlank()) {
+            throw new IllegalStateException("pan.pepper is not set");
+        }
+        SecretKeySpec key = new SecretKeySpec(pepper.getBytes(StandardCharsets.UTF_8), ALG);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance(ALG);
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("PAN hash init failed", e);
+            }
+        });
+    }
+
+    // убирает пробельные символы (как \s в regex) без regex; без пробелов возвращает ту же строку
     public static String normalize(String pan) {
         if (pan == null) return null;
-        return pan.replaceAll("\\s+", "");
+        int n = pan.length();
+        int i = 0;
+        while (i < n && !isSpace(pan.charAt(i))) i++;
+        if (i == n) return pan;
+        char[] out = new char[n];
+        pan.getChars(0, i, out, 0);
+        int len = i;
+        for (; i < n; i++) {
+            char ch = pan.charAt(i);
+            if (!isSpace(ch)) out[len++] = ch;
+        }
+        return new String(out, 0, len);
     }
 
-    public static String hmacSha256Base64(String normalizedPan) {
-        try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(new SecretKeySpec(PEPPER.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
-            byte[] out = mac.doFinal(normalizedPan.getBytes(StandardCharsets.UTF_8));
-            // можно хранить в hex, но base64 короче
-            return Base64.getEncoder().encodeToString(out);
-        } catch (Exception e) {
-            throw new IllegalStateException("PAN hash failed", e);
-        }
+    private static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+    }
+
+    public String hmacSha256Base64(String normalizedPan) {
+        byte[] out = mac.get().doFinal(normalizedPan.getBytes(StandardCharsets.UTF_8));
+        // можно хранить в hex, но base64 короче
+        return Base64.getEncoder().encodeToString(out);
     }
 }
@@ -0,0 +1,28 @@
+package com.example.bankcards.util;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+// Порядок UUID, совпадающий с PostgreSQL (беззнаковое побайтовое сравнение).
+// UUID.compareTo сравнивает старшие/младшие биты как signed long и расходится с БД,
+// поэтому для блокировок строк в детерминированном порядке используем этот компаратор.
+public final class UuidOrder {
+
+    public static final Comparator<UUID> COMPARATOR = (a, b) -> {
+        int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    // i-й из n равных диапазонов пространства UUID (по старшим 64 битам, беззнаково), границы включительно —
+    // для параллельного обхода таблиц по id: where id >= rangeStart and id <= rangeEnd
+    public static UUID rangeStart(int i, int n) {
+        return new UUID(Long.divideUnsigned(-1L, n) * i, 0L);
+    }
+
+    public static UUID rangeEnd(int i, int n) {
+        if (i == n - 1) return new UUID(-1L, -1L);
+        return new UUID(Long.divideUnsigned(-1L, n) * (i + 1) - 1, -1L);
+    }
+
+    private UuidOrder() {}
+}
@@ -0,0 +1,41 @@
+package com.example.bankcards.util;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// UUID версии 7 (RFC 9562): 48 бит — миллисекунды Unix-времени, 12 бит — счётчик внутри миллисекунды,
+// 62 бита — случайные. Старшие биты растут со временем, поэтому новые строки ложатся в правый край
+// B-дерева первичного ключа, а не на случайные страницы, как у UUIDv4.
+// Монотонность в пределах JVM: время и счётчик лежат в одном AtomicLong и сдвигаются CAS-ом без блокировок;
+// если счётчик миллисекунды исчерпан (4096 id), он переносится в поле времени — порядок сохраняется.
+// Случайная часть — ThreadLocalRandom: id не секрет (доступ к карте проверяется по владельцу), а SecureRandom
+// здесь был бы общей точкой синхронизации.
+public final class UuidV7 {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long state = LAST.updateAndGet(prev -> Math.max(now, prev + 1));
+        long msb = ((state >>> 12) << 16) | 0x7000L | (state & 0xFFFL);
+        long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    // миллисекунды Unix-времени из UUIDv7
+    public static long timestamp(UUID uuid) {
+        if (uuid.version() != 7) throw new IllegalArgumentException("Not a UUIDv7: " + uuid);
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+    // то же время в локальной зоне — в той же шкале, что и created_at (LocalDateTime.now())
+    public static LocalDateTime localDateTime(UUID uuid) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp(uuid)), ZoneId.systemDefault());
+    }
+
+    private UuidV7() {}
+}
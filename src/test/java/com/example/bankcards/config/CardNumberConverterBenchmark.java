@@ -0,0 +1,52 @@
+package com.example.bankcards.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность шифрования/расшифровки номера карты (на поток).
+// Запуск:
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.bankcards.config.CardNumberConverterBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardNumberConverterBenchmark {
+
+    @Param({"true", "false"})
+    public boolean legacyPlaintext;
+
+    private CardNumberConverter converter;
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        converter = new CardNumberConverter();
+        ReflectionTestUtils.setField(converter, "KEY_B64", Base64.getEncoder().encodeToString(new byte[32]));
+        ReflectionTestUtils.setField(converter, "legacyPlaintext", legacyPlaintext);
+        converter.init();
+        encrypted = converter.convertToDatabaseColumn("5555555555554444");
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return converter.convertToDatabaseColumn("5555555555554444");
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return converter.convertToEntityAttribute(encrypted);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CardNumberConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -42,4 +42,62 @@ class CardNumberConverterTest {
         String res = c.convertToEntityAttribute(old);
         assertEquals(old, res);                   // должен читаться без падения
     }
+
+    @Test
+    void roundTrip_nonAsciiAndManyValuesOnSameThread() {
+        CardNumberConverter c = new CardNumberConverter();
+        ReflectionTestUtils.setField(c, "KEY_B64", base64Key);
+        c.init();
+
+        for (String pan : new String[]{"4111111111111111", "номер-карты", "5555555555554444"}) {
+            assertEquals(pan, c.convertToEntityAttribute(c.convertToDatabaseColumn(pan)));
+        }
+    }
+
+    @Test
+    void legacyDisabled_failsOnUndecryptableValue() {
+        CardNumberConverter c = new CardNumberConverter();
+        ReflectionTestUtils.setField(c, "KEY_B64", base64Key);
+        ReflectionTestUtils.setField(c, "legacyPlaintext", false);
+        c.init();
+
+        String db = c.convertToDatabaseColumn("4111111111111111");
+        assertEquals("4111111111111111", c.convertToEntityAttribute(db));
+        assertThrows(IllegalStateException.class, () -> c.convertToEntityAttribute("4111111111111111"));
+    }
+
+    @Test
+    void rotation_oldValuesReadable_newValuesCarryKeyVersion() {
+        CardNumberConverter old = new CardNumberConverter();
+        ReflectionTestUtils.setField(old, "KEY_B64", base64Key);
+        old.init();
+        String before = old.convertToDatabaseColumn("4111111111111111");
+
+        byte[] k2 = new byte[32];
+        new SecureRandom().nextBytes(k2);
+        CardNumberConverter c = new CardNumberConverter();
+        ReflectionTestUtils.setField(c, "KEY_B64", base64Key);
+        ReflectionTestUtils.setField(c, "keysSpec", "2:" + Base64.getEncoder().encodeToString(k2));
+        ReflectionTestUtils.setField(c, "activeKey", 2);
+        c.init();
+
+        String after = c.convertToDatabaseColumn("4111111111111111");
+        assertTrue(after.startsWith("v2:"));
+        assertEquals("4111111111111111", c.convertToEntityAttribute(before));
+        assertEquals("4111111111111111", c.convertToEntityAttribute(after));
+        assertFalse(c.isCurrent(before));
+        assertFalse(c.isCurrent("4111111111111111"));
+        assertTrue(c.isCurrent(after));
+        assertTrue(old.isCurrent(before));
+        // ключ версии 2 старому экземпляру неизвестен
+        assertThrows(IllegalStateException.class, () -> old.convertToEntityAttribute(after));
+    }
+
+    @Test
+    void activeKeyMustBeConfigured() {
+        CardNumberConverter c = new CardNumberConverter();
+        ReflectionTestUtils.setField(c, "KEY_B64", base64Key);
+        ReflectionTestUtils.setField(c, "activeKey", 3);
+        assertThrows(IllegalStateException.class, c::init);
+    }
 }
@@ -2,6 +2,8 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.config.TestSecurityConfig;
 import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.CardSlice;
+import com.example.bankcards.dto.CardSummaryDto;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.repository.UserRepository;
@@ -58,8 +60,10 @@ class CardControllerTest {
     // зависимости контроллера
     @MockBean com.example.bankcards.service.CardService cardService;
     @MockBean com.example.bankcards.service.TransferService transferService;
+    @MockBean com.example.bankcards.service.BalanceEngine balanceEngine;
     @MockBean com.example.bankcards.repository.UserRepository userRepository;
     @MockBean com.example.bankcards.repository.CardRepository cardRepository;
+    @MockBean com.example.bankcards.service.CardAggregatesReconciler reconciler;
 
     @Test
     @WithMockUser(username = "testuser")
@@ -75,7 +79,7 @@ class CardControllerTest {
                 CardStatus.ACTIVE,
                 new BigDecimal("100")
         );
-        when(cardService.getOwnPaged(eq(me.getId()), eq(CardStatus.ACTIVE), eq("1234"), any(Pageable.class)))
+        when(cardService.getOwnPaged(eq(me.getId()), eq(CardStatus.ACTIVE), eq("1234"), isNull(), any(Pageable.class)))
                 .thenReturn(new PageImpl<>(List.of(dto)));
 
         mvc.perform(get("/api/cards/my")
@@ -88,4 +92,40 @@ class CardControllerTest {
                 .andExpect(jsonPath("$.content", hasSize(1)))
                 .andExpect(jsonPath("$.content[0].maskedNumber", is("**** **** **** 1234")));
     }
+
+    @Test
+    @WithMockUser(username = "admin", roles = "ADMIN")
+    void allCards_admin_returnsPageWithNextCursorHeader() throws Exception {
+        UUID after = UUID.randomUUID();
+        UUID last = UUID.randomUUID();
+        var dto = new CardDto(last, UUID.randomUUID(), "**** **** **** 4321",
+                LocalDate.of(2030, 1, 1), CardStatus.ACTIVE, BigDecimal.ONE);
+        when(cardService.getAllPage(after, 1)).thenReturn(new CardSlice(List.of(dto), last));
+
+        mvc.perform(get("/api/cards").param("after", after.toString()).param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", last.toString()))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].maskedNumber", is("**** **** **** 4321")));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser")
+    void summary_user_returnsOwnTotals_andRejectsOtherUser() throws Exception {
+        var me = new User(); me.setId(UUID.randomUUID()); me.setUsername("testuser");
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(me));
+        CardSummaryDto summary = new CardSummaryDto();
+        summary.add(CardStatus.ACTIVE, 2, new BigDecimal("150.00"));
+        summary.add(CardStatus.BLOCKED, 1, new BigDecimal("10.00"));
+        when(cardService.summaryOf(me.getId())).thenReturn(summary);
+
+        mvc.perform(get("/api/cards/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.byStatus.ACTIVE.count", is(2)))
+                .andExpect(jsonPath("$.byStatus.BLOCK_REQUESTED.count", is(0)))
+                .andExpect(jsonPath("$.total.count", is(3)))
+                .andExpect(jsonPath("$.total.balance", is(160.00)));
+        mvc.perform(get("/api/cards/summary").param("userId", UUID.randomUUID().toString()))
+                .andExpect(status().isForbidden());
+    }
 }
@@ -3,9 +3,7 @@ package com.example.bankcards.controller;
 import com.example.bankcards.config.TestSecurityConfig;
 import com.example.bankcards.dto.TransactionDto;
 import com.example.bankcards.dto.TransferRequest;
-import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
-import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.entity.enums.RoleType;
 import com.example.bankcards.entity.enums.TransactionStatus;
 import com.example.bankcards.repository.CardRepository;
@@ -13,6 +11,8 @@ import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.JwtUtil;
 import com.example.bankcards.security.SecurityConfig;
 import com.example.bankcards.security.UserDetailsServiceImpl;
+import com.example.bankcards.service.ExportFormat;
+import com.example.bankcards.service.TransactionExportService;
 import com.example.bankcards.service.TransferService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -26,16 +26,26 @@ import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -52,8 +62,10 @@ class TransferControllerTest {
     @Autowired ObjectMapper mapper;
 
     @MockBean com.example.bankcards.service.TransferService transferService;
+    @MockBean com.example.bankcards.service.BalanceEngine balanceEngine;
     @MockBean com.example.bankcards.repository.UserRepository userRepository;
     @MockBean com.example.bankcards.repository.CardRepository cardRepository;
+    @MockBean com.example.bankcards.service.TransactionExportService exportService;
 
     @MockBean org.springframework.security.core.userdetails.UserDetailsService userDetailsService;
     @MockBean com.example.bankcards.security.JwtUtil jwtUtil;
@@ -93,16 +105,8 @@ class TransferControllerTest {
         UUID fromId = UUID.randomUUID();
         UUID toId = UUID.randomUUID();
 
-        // обе карты принадлежат текущему пользователю
-        var owner = new User(); owner.setId(me);
-        var from = new Card(); from.setId(fromId); from.setOwner(owner); from.setStatus(CardStatus.ACTIVE);
-        var to   = new Card(); to.setId(toId);     to.setOwner(owner);   to.setStatus(CardStatus.ACTIVE);
-
-        when(cardRepository.findById(fromId)).thenReturn(Optional.of(from));
-        when(cardRepository.findById(toId)).thenReturn(Optional.of(to));
-
         // мокаем успешный ответ сервиса
-        when(transferService.transfer(any())).thenReturn(new TransactionDto(
+        when(balanceEngine.transfer(any())).thenReturn(new TransactionDto(
                 UUID.randomUUID(), me, fromId.toString(), toId.toString(), new BigDecimal("10"),
                 TransactionStatus.SUCCESS, LocalDateTime.now(), "OK"
         ));
@@ -119,5 +123,62 @@ class TransferControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.status").value("SUCCESS"))
                 .andExpect(jsonPath("$.owner").value(me.toString()));
+        // карты контроллер не загружает: владение проверяет сервис на заблокированных строках
+        verify(cardRepository, never()).findById(any());
+    }
+
+    @Test
+    void transferBatch_forbiddenIfAnyOwnerMismatch() throws Exception {
+        UUID me = UUID.randomUUID();
+        when(userRepository.findByUsername("testuser"))
+                .thenReturn(Optional.of(new User() {{ setId(me); setUsername("testuser"); }}));
+
+        var mine = new TransferRequest();
+        mine.setOwnerId(me);
+        mine.setFromCardId(UUID.randomUUID());
+        mine.setToCardId(UUID.randomUUID());
+        mine.setAmount(new BigDecimal("10"));
+
+        var foreign = new TransferRequest();
+        foreign.setOwnerId(UUID.randomUUID());
+        foreign.setFromCardId(UUID.randomUUID());
+        foreign.setToCardId(UUID.randomUUID());
+        foreign.setAmount(new BigDecimal("10"));
+
+        mvc.perform(post("/api/transfers/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(List.of(mine, foreign)))
+                        .with(user("testuser").roles("USER")))
+                .andExpect(status().isForbidden());
+        verify(balanceEngine, never()).transferBatch(any(), any());
+    }
+
+    @Test
+    void exportByUser_gzipNegotiated_andForeignUserForbidden() throws Exception {
+        UUID me = UUID.randomUUID();
+        when(userRepository.findByUsername("testuser"))
+                .thenReturn(Optional.of(new User() {{ setId(me); setUsername("testuser"); }}));
+        var export = mock(TransactionExportService.Export.class);
+        when(export.getName()).thenReturn("transactions-user-" + me);
+        when(exportService.byUser(eq(me), any(), any())).thenReturn(export);
+
+        MvcResult started = mvc.perform(get("/api/transfers/user/{id}/export", me)
+                        .param("format", "CSV")
+                        .param("from", "2024-01-01")
+                        .header("Accept-Encoding", "gzip, deflate")
+                        .with(user("testuser").roles("USER")))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Content-Disposition", containsString("transactions-user-" + me + ".csv")))
+                .andExpect(content().contentTypeCompatibleWith("text/csv"));
+        verify(exportService).byUser(me, java.time.LocalDate.of(2024, 1, 1), null);
+        verify(exportService).write(eq(export), eq(ExportFormat.CSV), any(GZIPOutputStream.class));
+
+        mvc.perform(get("/api/transfers/user/{id}/export", UUID.randomUUID())
+                        .with(user("testuser").roles("USER")))
+                .andExpect(status().isForbidden());
     }
 }
@@ -65,6 +65,17 @@ class UserControllerTest {
                 .andExpect(jsonPath("$[0].username", is("testuser")));
     }
 
+    @Test
+    void listUsers_asUserWithClaimsPrincipal_skipsRepository() throws Exception {
+        var me = new com.example.bankcards.security.AuthUser(UUID.randomUUID(), "testuser", RoleType.USER);
+
+        mvc.perform(get("/api/users").with(user(me)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(me.getId().toString())));
+        org.mockito.Mockito.verifyNoInteractions(userRepository);
+    }
+
     @Test
 //    @WithMockUser(username = "admin", roles = {"ADMIN"})
     void listUsers_asAdmin_returnsAll() throws Exception {
@@ -0,0 +1,65 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.RoleType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingUserDetailsServiceTest {
+
+    @Mock UserDetailsServiceImpl delegate;
+
+    CachingUserDetailsService service;
+    UUID aliceId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        service = new CachingUserDetailsService(delegate, new SimpleMeterRegistry(), 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void repeatedLoads_hitCacheAndDropPasswordHash() {
+        when(delegate.loadUserByUsername("alice")).thenReturn(new AuthUser(aliceId, "alice", RoleType.USER, "hash"));
+
+        var first = service.loadUserByUsername("alice");
+        var second = service.loadUserByUsername("alice");
+
+        assertSame(first, second);
+        assertNull(first.getPassword());
+        assertEquals(aliceId, ((AuthUser) first).getId());
+        verify(delegate, times(1)).loadUserByUsername("alice");
+        assertEquals(1, service.stats().hitCount());
+        assertEquals(1, service.stats().missCount());
+    }
+
+    @Test
+    void evict_forcesReload() {
+        when(delegate.loadUserByUsername("alice")).thenReturn(new AuthUser(aliceId, "alice", RoleType.USER, "hash"));
+
+        service.loadUserByUsername("alice");
+        service.evict("alice");
+        service.loadUserByUsername("alice");
+
+        verify(delegate, times(2)).loadUserByUsername("alice");
+    }
+
+    @Test
+    void unknownUser_isNotCached() {
+        when(delegate.loadUserByUsername("ghost")).thenThrow(new UsernameNotFoundException("User not found: ghost"));
+
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("ghost"));
+        assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("ghost"));
+        verify(delegate, times(2)).loadUserByUsername("ghost");
+    }
+}
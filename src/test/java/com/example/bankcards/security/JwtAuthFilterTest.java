@@ -0,0 +1,100 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.RoleType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtAuthFilterTest {
+
+    @Mock UserDetailsService userDetailsService;
+
+    JwtUtil jwtUtil = new JwtUtil("test-jwt-secret-and-very-long-key-for-unit-tests", 3600000, 1000);
+    UUID userId = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private MockHttpServletResponse run(JwtRevalidation policy, String token) throws Exception {
+        return run(new JwtAuthFilter(jwtUtil, userDetailsService, policy, Duration.ofMinutes(5), 1000), token);
+    }
+
+    private MockHttpServletResponse run(JwtAuthFilter filter, String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/cards");
+        req.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        filter.doFilter(req, res, new MockFilterChain());
+        return res;
+    }
+
+    @Test
+    void freshToken_principalFromClaimsWithoutDbLookup() throws Exception {
+        run(JwtRevalidation.AFTER, jwtUtil.generate(userId, "alice", RoleType.ADMIN));
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        assertEquals(userId, AuthUser.idOf(auth));
+        assertEquals("alice", auth.getName());
+        assertTrue(auth.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())));
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void revalidateAlways_usesRoleFromDatabase() throws Exception {
+        when(userDetailsService.loadUserByUsername("alice"))
+                .thenReturn(new AuthUser(userId, "alice", RoleType.USER, "hash"));
+
+        run(JwtRevalidation.ALWAYS, jwtUtil.generate(userId, "alice", RoleType.ADMIN));
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        assertTrue(auth.getAuthorities().stream().noneMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())));
+        assertNull(((AuthUser) auth.getPrincipal()).getPassword());
+    }
+
+    @Test
+    void revalidate_deletedOrRecreatedUser_isUnauthorized() throws Exception {
+        when(userDetailsService.loadUserByUsername("alice"))
+                .thenThrow(new UsernameNotFoundException("User not found: alice"))
+                .thenReturn(new AuthUser(UUID.randomUUID(), "alice", RoleType.USER, "hash"));
+        String token = jwtUtil.generate(userId, "alice", RoleType.USER);
+
+        assertEquals(401, run(JwtRevalidation.ALWAYS, token).getStatus());
+        assertEquals(401, run(JwtRevalidation.ALWAYS, token).getStatus());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void revalidateAfter_checksDatabaseOncePerInterval() throws Exception {
+        when(userDetailsService.loadUserByUsername("alice"))
+                .thenReturn(new AuthUser(userId, "alice", RoleType.USER, "hash"));
+        JwtAuthFilter filter = new JwtAuthFilter(jwtUtil, userDetailsService, JwtRevalidation.AFTER, Duration.ofSeconds(1), 1000);
+        String token = jwtUtil.generate(userId, "alice", RoleType.ADMIN);
+        // iat в секундах: через 1,1 с токен гарантированно старше revalidate-after
+        Thread.sleep(1100);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, run(filter, token).getStatus());
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            assertTrue(auth.getAuthorities().stream().noneMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())));
+        }
+        verify(userDetailsService, times(1)).loadUserByUsername("alice");
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.RoleType;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.Key;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость разбора токена в JwtAuthFilter на один запрос.
+// Запуск:
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.bankcards.security.JwtUtilBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "benchmark-jwt-secret-and-very-long-key-change-me";
+
+    private Key key;
+    private JwtUtil uncached;
+    private JwtUtil cached;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        key = Keys.hmacShaKeyFor(SECRET.getBytes());
+        uncached = new JwtUtil(SECRET, 3600000, 0); // 0 — кэш выключен, подпись проверяется каждый раз
+        cached = new JwtUtil(SECRET, 3600000, 1000);
+        token = cached.generate(UUID.randomUUID(), "alice", RoleType.USER);
+    }
+
+    // как было: новый парсер на каждый вызов
+    @Benchmark
+    public Claims parserPerCall() {
+        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+    }
+
+    // общий парсер, проверка подписи на каждый запрос
+    @Benchmark
+    public Claims sharedParser() {
+        return uncached.parse(token);
+    }
+
+    // повторный запрос с тем же токеном: SHA-256 токена и поиск в кеше
+    @Benchmark
+    public Claims cachedParse() {
+        return cached.parse(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtUtilBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.RoleType;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    static final String SECRET = "test-jwt-secret-and-very-long-key-for-unit-tests";
+
+    @Test
+    void parse_returnsAllClaimsAndServesRepeatFromCache() {
+        JwtUtil jwt = new JwtUtil(SECRET, 3600000, 100);
+        UUID id = UUID.randomUUID();
+        String token = jwt.generate(id, "alice", RoleType.ADMIN);
+
+        var claims = jwt.parse(token);
+
+        assertEquals("alice", claims.getSubject());
+        assertEquals(id.toString(), claims.get(JwtUtil.CLAIM_UID, String.class));
+        assertEquals("ADMIN", claims.get(JwtUtil.CLAIM_ROLE, String.class));
+        assertSame(claims, jwt.parse(token));
+    }
+
+    @Test
+    void parse_tamperedTokenIsVerifiedEvenWhenOriginalIsCached() {
+        JwtUtil jwt = new JwtUtil(SECRET, 3600000, 100);
+        String token = jwt.generate(UUID.randomUUID(), "alice", RoleType.USER);
+        jwt.parse(token);
+
+        String forged = new JwtUtil("another-jwt-secret-and-very-long-key-for-tests", 3600000, 100)
+                .generate(UUID.randomUUID(), "alice", RoleType.ADMIN);
+
+        assertThrows(SignatureException.class, () -> jwt.parse(forged));
+        assertFalse(jwt.validateToken(token.substring(0, token.length() - 2) + "xx"));
+    }
+
+    @Test
+    void parse_cachedEntryDoesNotOutliveToken() throws Exception {
+        JwtUtil jwt = new JwtUtil(SECRET, 1000, 100);
+        String token = jwt.generate(UUID.randomUUID(), "alice", RoleType.USER);
+        jwt.parse(token);
+
+        Thread.sleep(1100);
+
+        assertThrows(ExpiredJwtException.class, () -> jwt.parse(token));
+    }
+
+    @Test
+    void parse_withZeroCacheSize_verifiesEveryTime() {
+        JwtUtil jwt = new JwtUtil(SECRET, 3600000, 0);
+        String token = jwt.generate(UUID.randomUUID(), "alice", RoleType.USER);
+
+        Claims first = jwt.parse(token);
+
+        assertNotSame(first, jwt.parse(token));
+        assertEquals("alice", jwt.parse(token).getSubject());
+    }
+}
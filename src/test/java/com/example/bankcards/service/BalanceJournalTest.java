@@ -0,0 +1,74 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceJournalTest {
+
+    @TempDir Path dir;
+
+    private static BalanceJournal.Entry transfer(long seq) {
+        BalanceJournal.Entry e = BalanceJournal.Entry.transfer(UUID.randomUUID(), UUID.randomUUID(),
+                UUID.randomUUID(), UUID.randomUUID(), 12345, 1_700_000_000_000L);
+        e.seq = seq;
+        return e;
+    }
+
+    @Test
+    void appendedEntries_surviveReopen() throws Exception {
+        Path file = dir.resolve("j.bin");
+        BalanceJournal.Entry first = transfer(1);
+        BalanceJournal.Entry topUp = BalanceJournal.Entry.topUp(UUID.randomUUID(), 500, 1L);
+        topUp.seq = 2;
+        try (BalanceJournal j = new BalanceJournal(file, 4096)) {
+            j.readAll();
+            j.append(first);
+            j.append(topUp);
+            j.force();
+        }
+        try (BalanceJournal j = new BalanceJournal(file, 4096)) {
+            List<BalanceJournal.Entry> read = j.readAll();
+            assertEquals(2, read.size());
+            assertEquals(first.txId, read.get(0).txId);
+            assertEquals(first.fromCardId, read.get(0).fromCardId);
+            assertEquals(12345, read.get(0).amount);
+            assertEquals(BalanceJournal.TOP_UP, read.get(1).type);
+            assertNull(read.get(1).fromCardId);
+        }
+    }
+
+    @Test
+    void corruptedRecord_stopsReplay() throws Exception {
+        Path file = dir.resolve("j.bin");
+        try (BalanceJournal j = new BalanceJournal(file, 4096)) {
+            j.readAll();
+            j.append(transfer(1));
+            j.append(transfer(2));
+            j.force();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(4 + 97 + 20); // внутри второй записи
+            raf.write(0x7f);
+        }
+        try (BalanceJournal j = new BalanceJournal(file, 4096)) {
+            assertEquals(1, j.readAll().size());
+        }
+    }
+
+    @Test
+    void reset_dropsEntries() throws Exception {
+        try (BalanceJournal j = new BalanceJournal(dir.resolve("j.bin"), 4096)) {
+            j.readAll();
+            j.append(transfer(1));
+            j.reset();
+            assertTrue(j.readAll().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.enums.CardStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// тестовые пользователи, карты и переводы для @BankJpaTest — прямыми INSERT-ами, без сервисов и шифра.
+// JdbcTemplate работает в транзакции теста, если она есть, иначе каждая вставка фиксируется сразу
+class BankFixtures {
+
+    private final JdbcTemplate jdbc;
+
+    BankFixtures(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    UUID user(String username) {
+        UUID id = UUID.randomUUID();
+        jdbc.update("insert into users (id, username, password, role) values (?, ?, 'x', 'USER')", id, username);
+        return id;
+    }
+
+    UUID user() {
+        return user("user-" + UUID.randomUUID());
+    }
+
+    // по умолчанию: ACTIVE, баланс 0, last4 '0000', номер 'x' (не расшифровывается — читать его тесту не нужно)
+    CardRow card(UUID owner) {
+        return new CardRow(owner);
+    }
+
+    void transfer(UUID owner, UUID from, UUID to, String amount, LocalDateTime at, String message) {
+        jdbc.update("insert into transactions (id, owner_id, from_card_id, to_card_id, amount, status, created_at, message) " +
+                "values (?, ?, ?, ?, ?, 'SUCCESS', ?, ?)", UUID.randomUUID(), owner, from, to, new BigDecimal(amount), at, message);
+    }
+
+    void transfer(UUID owner, UUID from, UUID to, LocalDateTime at) {
+        transfer(owner, from, to, "1.00", at, "OK");
+    }
+
+    final class CardRow {
+        private final UUID owner;
+        private UUID id = UUID.randomUUID();
+        private String number = "x";
+        private LocalDate expiry = LocalDate.now().plusYears(1);
+        private CardStatus status = CardStatus.ACTIVE;
+        private BigDecimal balance = BigDecimal.ZERO;
+        private String last4 = "0000";
+
+        private CardRow(UUID owner) {
+            this.owner = owner;
+        }
+
+        CardRow id(UUID id) { this.id = id; return this; }
+        CardRow number(String number) { this.number = number; return this; }
+        CardRow status(CardStatus status) { this.status = status; return this; }
+        CardRow balance(String balance) { this.balance = new BigDecimal(balance); return this; }
+        CardRow last4(String last4) { this.last4 = last4; return this; }
+
+        UUID insert() {
+            jdbc.update("insert into cards (id, owner_id, encrypted_card_number, expiry_date, status, balance, last4, version) " +
+                    "values (?, ?, ?, ?, ?, ?, ?, 0)", id, owner, number, expiry, status.name(), balance, last4);
+            return id;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AggregateDrift;
+import com.example.bankcards.dto.CardSummaryDto;
+import com.example.bankcards.dto.CreateCardRequest;
+import com.example.bankcards.dto.ReconcileReport;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.util.PanHasher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// агрегаты меняются в транзакциях операций над картами и сходятся с cards; сверка находит и исправляет расхождения
+@BankJpaTest(properties = "bank.cards.summary.reconcile.chunks=4")
+@Import({CardService.class, CardAggregates.class, CardAggregatesReconciler.class, PanHasher.class})
+@Sql("/sql/card-aggregates.sql")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CardAggregatesTest {
+
+    @Autowired CardService cardService;
+    @Autowired CardAggregatesReconciler reconciler;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired BankFixtures fixtures;
+
+    @BeforeEach
+    void baseline() {
+        // карты других тестов в общей БД заводились без агрегатов
+        reconciler.reconcile(true);
+    }
+
+    private UUID card(UUID owner) {
+        CreateCardRequest r = new CreateCardRequest();
+        r.setEncryptedCardNumber(String.format("5%015d", ThreadLocalRandom.current().nextLong(1_000_000_000_000_000L)));
+        r.setExpiryDate(LocalDate.now().plusYears(2));
+        return cardService.createForUser(owner, r).getId();
+    }
+
+    private static void assertTotals(CardSummaryDto s, CardStatus status, long count, String balance) {
+        assertEquals(count, s.getByStatus().get(status).getCount(), status.name());
+        assertEquals(0, new BigDecimal(balance).compareTo(s.getByStatus().get(status).getBalance()), status.name());
+    }
+
+    @Test
+    void cardLifecycle_updatesOwnerAndGlobalTotals() {
+        CardSummaryDto before = cardService.globalSummary();
+        UUID owner = fixtures.user();
+        UUID a = card(owner);
+        UUID b = card(owner);
+        cardService.topUp(a, new BigDecimal("100.00"));
+        cardService.topUp(b, new BigDecimal("20.50"));
+        cardService.adminSetStatus(b, CardStatus.BLOCKED);
+
+        CardSummaryDto mine = cardService.summaryOf(owner);
+        assertTotals(mine, CardStatus.ACTIVE, 1, "100.00");
+        assertTotals(mine, CardStatus.BLOCKED, 1, "20.50");
+        assertEquals(2, mine.getTotal().getCount());
+
+        cardService.delete(b);
+        mine = cardService.summaryOf(owner);
+        assertTotals(mine, CardStatus.BLOCKED, 0, "0");
+
+        CardSummaryDto after = cardService.globalSummary();
+        assertEquals(before.getTotal().getCount() + 1, after.getTotal().getCount());
+        assertEquals(0, before.getTotal().getBalance().add(new BigDecimal("100.00")).compareTo(after.getTotal().getBalance()));
+        assertTrue(reconciler.reconcile(false).getDrifts().isEmpty());
+    }
+
+    @Test
+    void concurrentTopUps_keepTotalsExact() throws Exception {
+        List<UUID> cards = new ArrayList<>();
+        UUID first = fixtures.user();
+        UUID second = fixtures.user();
+        for (int i = 0; i < 4; i++) cards.add(card(i % 2 == 0 ? first : second));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 24; i++) {
+                        cardService.topUp(cards.get(i % cards.size()), new BigDecimal("1.00"));
+                    }
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTotals(cardService.summaryOf(first), CardStatus.ACTIVE, 2, "48.00");
+        assertTotals(cardService.summaryOf(second), CardStatus.ACTIVE, 2, "48.00");
+        assertTrue(reconciler.reconcile(false).getDrifts().isEmpty());
+    }
+
+    @Test
+    void reconcile_reportsAndFixesDrift() {
+        UUID owner = fixtures.user();
+        UUID a = card(owner);
+        cardService.topUp(a, new BigDecimal("10.00"));
+        jdbc.update("update card_owner_totals set balance = balance + 5 where owner_id = ? and status = 'ACTIVE'", owner);
+        jdbc.update("update card_global_totals set card_count = card_count + 1 where status = 'BLOCKED' and shard = 3");
+
+        ReconcileReport report = reconciler.reconcile(false);
+        assertEquals(2, report.getDrifts().size());
+        AggregateDrift ownerDrift = report.getDrifts().get(0);
+        assertEquals(owner, ownerDrift.getOwnerId());
+        assertEquals(0, new BigDecimal("10.00").compareTo(ownerDrift.getExpectedBalance()));
+        assertEquals(0, new BigDecimal("15.00").compareTo(ownerDrift.getActualBalance()));
+        AggregateDrift globalDrift = report.getDrifts().get(1);
+        assertNull(globalDrift.getOwnerId());
+        assertEquals(CardStatus.BLOCKED, globalDrift.getStatus());
+        assertEquals(globalDrift.getExpectedCount() + 1, globalDrift.getActualCount());
+        assertFalse(report.isFixed());
+
+        assertTrue(reconciler.reconcile(true).isFixed());
+        assertTrue(reconciler.reconcile(false).getDrifts().isEmpty());
+        assertTotals(cardService.summaryOf(owner), CardStatus.ACTIVE, 1, "10.00");
+    }
+}
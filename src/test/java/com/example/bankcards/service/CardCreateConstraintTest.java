@@ -0,0 +1,49 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CreateCardRequest;
+import com.example.bankcards.util.PanHasher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// создание карты — один INSERT; дубликат номера и несуществующий владелец распознаются по именам ограничений
+@BankJpaTest
+@Import({CardService.class, CardAggregates.class, PanHasher.class})
+@Sql("/sql/card-aggregates.sql")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CardCreateConstraintTest {
+
+    @Autowired CardService cardService;
+    @Autowired BankFixtures fixtures;
+
+    private CreateCardRequest req(String pan) {
+        CreateCardRequest r = new CreateCardRequest();
+        r.setEncryptedCardNumber(pan);
+        r.setExpiryDate(LocalDate.now().plusYears(2));
+        return r;
+    }
+
+    @Test
+    void duplicatePan_isConflictAndUnknownOwner_isBadRequest() {
+        UUID ownerId = fixtures.user();
+
+        // id новой карты — UUIDv7 (@UuidV7Id)
+        assertEquals(7, cardService.createForUser(ownerId, req("4000 0000 0000 0002")).getId().version());
+
+        var dup = assertThrows(IllegalStateException.class,
+                () -> cardService.createForUser(ownerId, req("4000000000000002")));
+        assertEquals("Card number already exists", dup.getMessage());
+
+        var noUser = assertThrows(IllegalArgumentException.class,
+                () -> cardService.createForUser(UUID.randomUUID(), req("4000 0000 0000 0010")));
+        assertTrue(noUser.getMessage().startsWith("User not found"));
+    }
+}
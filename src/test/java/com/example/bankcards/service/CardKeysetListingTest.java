@@ -0,0 +1,72 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.CardSlice;
+import com.example.bankcards.util.PanHasher;
+import com.example.bankcards.util.UuidOrder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// admin-список карт: страницы по id без пропусков и повторов; поток отдаёт все карты по порядку,
+// очищая контекст персистентности после каждой порции
+@BankJpaTest(properties = {
+        "bank.cards.page.max-size=3",
+        "bank.cards.stream.fetch-size=2"
+})
+@Import({CardService.class, CardAggregates.class, PanHasher.class})
+class CardKeysetListingTest {
+
+    @Autowired CardService cardService;
+    @Autowired TestEntityManager em;
+    @Autowired BankFixtures fixtures;
+
+    List<UUID> ids = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        UUID ownerId = fixtures.user("keyset");
+        for (int i = 0; i < 7; i++) {
+            ids.add(fixtures.card(ownerId).last4(String.format("%04d", i)).insert());
+        }
+        ids.sort(UuidOrder.COMPARATOR);
+    }
+
+    @Test
+    void pagesFollowIdOrderAndSizeIsCapped() {
+        List<UUID> seen = new ArrayList<>();
+        UUID cursor = null;
+        int pages = 0;
+        do {
+            CardSlice slice = cardService.getAllPage(cursor, 100);
+            assertTrue(slice.getItems().size() <= 3);
+            slice.getItems().forEach(c -> seen.add(c.getId()));
+            cursor = slice.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(ids, seen);
+        assertEquals(3, pages);
+        assertThrows(IllegalArgumentException.class, () -> cardService.getAllPage(null, 0));
+    }
+
+    @Test
+    void streamReturnsAllCardsAndDetachesThem() {
+        List<CardDto> out = new ArrayList<>();
+        cardService.streamAll(out::add);
+
+        assertEquals(ids, out.stream().map(CardDto::getId).collect(Collectors.toList()));
+        // после последней полной порции в контексте остаётся не больше fetch-size карт
+        assertTrue(em.getEntityManager().unwrap(org.hibernate.Session.class)
+                .getStatistics().getEntityCount() <= 2);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.PanHasher;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// списки карт и история переводов не расшифровывают номер карты.
+// В encrypted_card_number лежит base64, который не расшифровывается этим ключом, а legacy-plaintext
+// выключен — любая попытка расшифровки упала бы с IllegalStateException.
+@BankJpaTest(properties = "encrypt.legacy-plaintext=false")
+@Import({CardService.class, CardAggregates.class, TransferService.class, PanHasher.class})
+class CardListingNoDecryptTest {
+
+    static final String UNDECRYPTABLE = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+
+    @Autowired CardService cardService;
+    @Autowired TransferService transferService;
+    @Autowired CardRepository cardRepository;
+    @Autowired BankFixtures fixtures;
+
+    UUID ownerId;
+    UUID fromId = UUID.randomUUID();
+    UUID toId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        ownerId = fixtures.user("no-decrypt");
+        fixtures.card(ownerId).id(fromId).number(UNDECRYPTABLE + "1111").last4("1111").balance("100.00").insert();
+        fixtures.card(ownerId).id(toId).number(UNDECRYPTABLE + "2222").last4("2222").balance("100.00").insert();
+        fixtures.transfer(ownerId, fromId, toId, "10.00", LocalDateTime.now(), "OK");
+    }
+
+    @Test
+    void cardLists_maskFromLast4WithoutDecrypt() {
+        List<String> all = cardService.getAllPage(null, 10).getItems().stream().map(CardDto::getMaskedNumber).sorted().collect(Collectors.toList());
+        List<String> byUser = cardService.getByUser(ownerId).stream().map(CardDto::getMaskedNumber).sorted().collect(Collectors.toList());
+        List<String> paged = cardService.getOwnPaged(ownerId, null, null, null, PageRequest.of(0, 10))
+                .map(CardDto::getMaskedNumber).getContent().stream().sorted().collect(Collectors.toList());
+
+        List<String> expected = List.of("**** **** **** 1111", "**** **** **** 2222");
+        assertEquals(expected, all);
+        assertEquals(expected, byUser);
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    void history_maskFromLast4WithoutDecrypt() {
+        List<TransactionDto> byUser = transferService.getByUser(ownerId, null, 10).getItems();
+        List<TransactionDto> byCard = transferService.getByCard(fromId, null, 10).getItems();
+
+        assertEquals(1, byUser.size());
+        assertEquals("**** **** **** 1111", byUser.get(0).getFromMasked());
+        assertEquals("**** **** **** 2222", byCard.get(0).getToMasked());
+    }
+
+    @Test
+    void panIsLoadedOnlyOnExplicitAccess() {
+        Card card = cardRepository.findById(fromId).orElseThrow();
+
+        assertFalse(Hibernate.isPropertyInitialized(card, "encryptedCardNumber"));
+        assertEquals("**** **** **** 1111", card.getMaskedNumber());
+        // явное обращение к номеру расшифровывает его — здесь это и должно упасть
+        assertThrows(RuntimeException.class, card::getEncryptedCardNumber);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.CardNumberConverter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// перешифровка проходит все диапазоны кусками, не трогает уже актуальные строки и продолжается с контрольной точки
+@BankJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CardReencryptionJobTest {
+
+    static final String KEY0 = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=";
+    static final String KEY1 = "AQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQE=";
+
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager txManager;
+    @Autowired BankFixtures fixtures;
+
+    CardNumberConverter oldKey;
+    CardNumberConverter newKey;
+    UUID ownerId;
+    List<UUID> cards = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        oldKey = converter(0);
+        newKey = converter(1);
+        jdbc.execute("create table if not exists card_reencrypt_checkpoint (id varchar(64) primary key, " +
+                "last_card_id uuid, failed_rows int default 0 not null, changed_rows int default 0 not null, " +
+                "updated_at timestamp default current_timestamp not null)");
+        ownerId = fixtures.user();
+        for (int i = 0; i < 20; i++) {
+            String pan = String.format("4000%012d", i);
+            // одна карта — старый открытый номер без last4
+            String stored = i == 0 ? pan : oldKey.convertToDatabaseColumn(pan);
+            cards.add(fixtures.card(ownerId).number(stored).last4(i == 0 ? null : pan.substring(12)).insert());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbc.update("delete from cards where owner_id = ?", ownerId);
+        jdbc.update("delete from users where id = ?", ownerId);
+        jdbc.update("delete from card_reencrypt_checkpoint");
+    }
+
+    private CardNumberConverter converter(int active) {
+        CardNumberConverter c = new CardNumberConverter();
+        ReflectionTestUtils.setField(c, "KEY_B64", KEY0);
+        ReflectionTestUtils.setField(c, "keysSpec", "1:" + KEY1);
+        ReflectionTestUtils.setField(c, "activeKey", active);
+        c.init();
+        return c;
+    }
+
+    private CardReencryptionJob job(SimpleMeterRegistry registry) {
+        return new CardReencryptionJob(jdbc, txManager, newKey, registry, 3, 0, 4);
+    }
+
+    private double rows(SimpleMeterRegistry registry, String result) {
+        return registry.get("bank.card.reencrypt.rows").tag("result", result).counter().count();
+    }
+
+    @Test
+    void reencryptsAllCardsWithActiveKeyAndResumes() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        job(registry).runAll();
+
+        assertEquals(20, rows(registry, "updated"));
+        for (int i = 0; i < cards.size(); i++) {
+            String stored = jdbc.queryForObject("select encrypted_card_number from cards where id = ?", String.class, cards.get(i));
+            assertTrue(stored.startsWith("v1:"));
+            assertEquals(String.format("4000%012d", i), newKey.convertToEntityAttribute(stored));
+        }
+        assertEquals("0000", jdbc.queryForObject("select last4 from cards where id = ?", String.class, cards.get(0)));
+        assertEquals(4, jdbc.queryForObject("select count(*) from card_reencrypt_checkpoint where id like 'k1-%'", Integer.class));
+
+        // диапазоны пройдены — повторный запуск не читает cards
+        SimpleMeterRegistry again = new SimpleMeterRegistry();
+        job(again).runAll();
+        assertEquals(0, rows(again, "updated"));
+        assertEquals(0, rows(again, "skipped"));
+
+        // сброс контрольных точек: строки уже на активном ключе и пропускаются
+        jdbc.update("delete from card_reencrypt_checkpoint");
+        SimpleMeterRegistry reset = new SimpleMeterRegistry();
+        job(reset).runAll();
+        assertEquals(0, rows(reset, "updated"));
+        assertEquals(20, rows(reset, "skipped"));
+    }
+
+    @Test
+    void undecryptableRow_isCountedAsFailedAndLeftUntouched() throws Exception {
+        // шифротекст чужим ключом 0: при legacy-plaintext обычное чтение вернуло бы его как «номер»
+        CardNumberConverter foreign = new CardNumberConverter();
+        ReflectionTestUtils.setField(foreign, "KEY_B64", KEY1);
+        foreign.init();
+        String stored = foreign.convertToDatabaseColumn("4000999999999999");
+        jdbc.update("update cards set encrypted_card_number = ?, last4 = null where id = ?", stored, cards.get(5));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        job(registry).runAll();
+
+        assertEquals(1, rows(registry, "failed"));
+        assertEquals(19, rows(registry, "updated"));
+        assertEquals(stored, jdbc.queryForObject("select encrypted_card_number from cards where id = ?", String.class, cards.get(5)));
+        assertNull(jdbc.queryForObject("select last4 from cards where id = ?", String.class, cards.get(5)));
+        // диапазон с битой строкой не отмечен пройденным, итог сохранён в контрольной точке
+        assertEquals(1, jdbc.queryForObject("select sum(failed_rows) from card_reencrypt_checkpoint", Integer.class));
+        assertEquals(1, jdbc.queryForObject("select count(*) from card_reencrypt_checkpoint where last_card_id is null", Integer.class));
+
+        // следующий запуск проходит этот диапазон заново; строку починили — теперь он пройден
+        jdbc.update("update cards set encrypted_card_number = ? where id = ?",
+                oldKey.convertToDatabaseColumn("4000999999999999"), cards.get(5));
+        SimpleMeterRegistry again = new SimpleMeterRegistry();
+        job(again).runAll();
+        assertEquals(1, rows(again, "updated"));
+        assertEquals(0, rows(again, "failed"));
+        assertEquals(0, jdbc.queryForObject("select sum(failed_rows) from card_reencrypt_checkpoint", Integer.class));
+        assertEquals(0, jdbc.queryForObject("select count(*) from card_reencrypt_checkpoint where last_card_id is null", Integer.class));
+    }
+}
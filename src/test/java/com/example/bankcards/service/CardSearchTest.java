@@ -0,0 +1,68 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDto;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Last4Match;
+import com.example.bankcards.util.PanHasher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// поиск своих карт: один запрос по Specification для любых сочетаний статуса и last4
+@BankJpaTest
+@Import({CardService.class, CardAggregates.class, PanHasher.class})
+class CardSearchTest {
+
+    @Autowired CardService cardService;
+    @Autowired BankFixtures fixtures;
+
+    UUID ownerId;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = fixtures.user("search-owner");
+        UUID other = fixtures.user("search-other");
+        card(ownerId, "1234", CardStatus.ACTIVE);
+        card(ownerId, "1299", CardStatus.BLOCKED);
+        card(ownerId, "5123", CardStatus.ACTIVE);
+        card(ownerId, "9912", CardStatus.ACTIVE);
+        card(other, "1234", CardStatus.ACTIVE);
+    }
+
+    private void card(UUID owner, String last4, CardStatus status) {
+        fixtures.card(owner).last4(last4).status(status).insert();
+    }
+
+    private List<String> find(CardStatus status, String last4, Last4Match match) {
+        return cardService.getOwnPaged(ownerId, status, last4, match, PageRequest.of(0, 10, Sort.by("last4")))
+                .map(CardDto::getMaskedNumber).getContent().stream()
+                .map(m -> m.substring(m.length() - 4))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void filtersCombineInOneQuery() {
+        assertEquals(List.of("1234", "1299", "5123", "9912"), find(null, null, null));
+        assertEquals(List.of("1234", "5123", "9912"), find(CardStatus.ACTIVE, null, null));
+        assertEquals(List.of("1234", "1299"), find(null, "12", null));            // PREFIX по умолчанию
+        assertEquals(List.of("1234"), find(CardStatus.ACTIVE, "12", Last4Match.PREFIX));
+        assertEquals(List.of("1234", "1299", "5123", "9912"), find(null, "12", Last4Match.CONTAINS));
+        assertEquals(List.of(), find(null, "12", Last4Match.EXACT));
+        assertEquals(List.of("1234"), find(null, "1234", Last4Match.CONTAINS)); // 4 цифры — точное совпадение
+    }
+
+    @Test
+    void last4MustBeDigits() {
+        assertThrows(IllegalArgumentException.class, () -> find(null, "1%", null));
+        assertThrows(IllegalArgumentException.class, () -> find(null, "12345", null));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CreateCardRequest;
+import com.example.bankcards.util.PanHasher;
+import com.example.bankcards.util.UuidV7;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// удаление карты: карту с переводами удалить нельзя, в том числе если перевод старше окна проверки
+// (часы узлов разошлись больше чем на ID_CLOCK_SKEW); агрегаты при отказе не меняются
+@BankJpaTest
+@Import({CardService.class, CardAggregates.class, PanHasher.class})
+@Sql("/sql/card-aggregates.sql")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CardServiceDeleteTest {
+
+    @Autowired CardService cardService;
+    @Autowired BankFixtures fixtures;
+
+    private UUID card(UUID owner) {
+        CreateCardRequest r = new CreateCardRequest();
+        r.setEncryptedCardNumber(String.format("6%015d", ThreadLocalRandom.current().nextLong(1_000_000_000_000_000L)));
+        r.setExpiryDate(LocalDate.now().plusYears(2));
+        return cardService.createForUser(owner, r).getId();
+    }
+
+    @Test
+    void delete_refusedWhileCardHasTransfers_keepsTotals() {
+        UUID owner = fixtures.user();
+        UUID a = card(owner);
+        UUID b = card(owner);
+        fixtures.transfer(owner, a, b, LocalDateTime.now());
+
+        assertThrows(IllegalStateException.class, () -> cardService.delete(a));
+        assertThrows(IllegalStateException.class, () -> cardService.delete(b));
+        assertEquals(2, cardService.summaryOf(owner).getTotal().getCount());
+    }
+
+    @Test
+    void delete_refusedForTransferOlderThanIdClockSkew() {
+        UUID owner = fixtures.user();
+        UUID a = card(owner);
+        UUID b = card(owner);
+        fixtures.transfer(owner, a, b, UuidV7.localDateTime(a).minusDays(2));
+
+        var ex = assertThrows(IllegalStateException.class, () -> cardService.delete(a));
+        assertEquals("Card has related transactions", ex.getMessage());
+        assertEquals(2, cardService.summaryOf(owner).getTotal().getCount());
+
+        UUID unused = card(owner);
+        assertTrue(cardService.delete(unused));
+        assertEquals(2, cardService.summaryOf(owner).getTotal().getCount());
+    }
+}
@@ -8,13 +8,17 @@ import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.TransactionRepository;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.util.PanHasher;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.Optional;
 import java.util.UUID;
@@ -29,6 +33,7 @@ class CardServiceTest {
     @Mock CardRepository cardRepository;
     @Mock UserRepository userRepository;
     @Mock TransactionRepository transactionRepository;
+    @Mock CardAggregates aggregates;
 
     CardService service;
 
@@ -37,25 +42,44 @@ class CardServiceTest {
 
     @BeforeEach
     void setUp() {
-        service = new CardService(cardRepository, userRepository, transactionRepository);
+        service = new CardService(cardRepository, userRepository, transactionRepository, event -> {},
+                new PanHasher("test-pepper"), aggregates);
         user = new User();
         user.setId(userId);
         user.setUsername("user1");
     }
 
     @Test
-    void create_duplicatePan_throws400() {
-        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+    void create_duplicatePan_throws409() {
+        when(userRepository.getReferenceById(userId)).thenReturn(user);
 
         CreateCardRequest req = new CreateCardRequest();
         req.setEncryptedCardNumber("4111 1111 1111 1111");
         req.setExpiryDate(LocalDate.of(2030,12,1));
 
-        when(cardRepository.existsByPanHash(anyString())).thenReturn(true);
+        // дубликат ловит уникальный индекс по pan_hash, предварительных SELECT нет
+        when(cardRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate",
+                new ConstraintViolationException("duplicate", new SQLException(), "ux_cards_pan_hash")));
         assertThatThrownBy(() -> service.createForUser(userId, req))
-                .isInstanceOf(IllegalArgumentException.class)
+                .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining("already exists");
-        verify(cardRepository, never()).save(any());
+        verify(userRepository, never()).findById(any());
+        verifyNoInteractions(aggregates);
+    }
+
+    @Test
+    void create_savesSingleCardWithHashAndLast4() {
+        when(userRepository.getReferenceById(userId)).thenReturn(user);
+
+        CreateCardRequest req = new CreateCardRequest();
+        req.setEncryptedCardNumber("4111 1111 1111 1234");
+        req.setExpiryDate(LocalDate.of(2030,12,1));
+
+        var dto = service.createForUser(userId, req);
+
+        assertEquals("**** **** **** 1234", dto.getMaskedNumber());
+        verify(cardRepository).saveAndFlush(argThat(c -> c.getPanHash() != null && "4111111111111234".equals(c.getEncryptedCardNumber())));
+        verify(aggregates).cardAdded(any(), eq(userId), eq(CardStatus.ACTIVE), eq(BigDecimal.ZERO));
     }
 
     @Test
@@ -72,4 +96,38 @@ class CardServiceTest {
                 () -> service.topUp(cardId, new BigDecimal("100")));
         assertTrue(ex.getMessage().contains("not ACTIVE"));
     }
+
+    @Test
+    void topUpConditional_singleUpdateWithoutLocking() {
+        ReflectionTestUtils.setField(service, "mode", TransferMode.CONDITIONAL);
+        UUID cardId = UUID.randomUUID();
+        when(cardRepository.topUpIfActive(cardId, new BigDecimal("100"))).thenReturn(1);
+
+        service.topUp(cardId, new BigDecimal("100"));
+
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        verify(cardRepository, never()).findById(any());
+        verify(aggregates).balancesChanged(java.util.Map.of(cardId, new BigDecimal("100")));
+    }
+
+    @Test
+    void delete_otherConstraintViolation_isNotReportedAsTransfers() {
+        UUID cardId = UUID.randomUUID();
+        Card c = new Card();
+        c.setId(cardId);
+        c.setOwner(user);
+        c.setStatus(CardStatus.ACTIVE);
+        c.setBalance(BigDecimal.ZERO);
+        when(cardRepository.findByIdForUpdate(cardId)).thenReturn(Optional.of(c));
+        DataIntegrityViolationException other = new DataIntegrityViolationException("other",
+                new ConstraintViolationException("other", new SQLException(), "fk_some_other_table"));
+        doThrow(other).when(cardRepository).flush();
+
+        assertSame(other, assertThrows(DataIntegrityViolationException.class, () -> service.delete(cardId)));
+
+        doThrow(new DataIntegrityViolationException("fk", new ConstraintViolationException("fk", new SQLException(),
+                "fk_transactions_to_card"))).when(cardRepository).flush();
+        var ex = assertThrows(IllegalStateException.class, () -> service.delete(cardId));
+        assertEquals("Card has related transactions", ex.getMessage());
+    }
 }
@@ -0,0 +1,134 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.exception.BackpressureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GroupCommitTransferExecutorTest {
+
+    @Mock TransferService transferService;
+
+    GroupCommitTransferExecutor executor;
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() throws Exception {
+        callers.shutdownNow();
+        if (executor != null) executor.stop();
+    }
+
+    private GroupCommitTransferExecutor start(int maxBatch, long maxWaitMs) {
+        executor = new GroupCommitTransferExecutor(transferService, new SimpleMeterRegistry(),
+                100, maxBatch, maxWaitMs, 1000, 1, 30000);
+        executor.start();
+        return executor;
+    }
+
+    // воркеры не запущены — переводы остаются в очереди
+    private GroupCommitTransferExecutor idle(long resultTimeoutMs) {
+        executor = new GroupCommitTransferExecutor(transferService, new SimpleMeterRegistry(),
+                100, 4, 1, 1000, 1, resultTimeoutMs);
+        return executor;
+    }
+
+    private static TransferRequest req(String amount) {
+        TransferRequest r = new TransferRequest();
+        r.setOwnerId(UUID.randomUUID());
+        r.setFromCardId(UUID.randomUUID());
+        r.setToCardId(UUID.randomUUID());
+        r.setAmount(new BigDecimal(amount));
+        return r;
+    }
+
+    private static TransactionDto dto(TransferRequest r) {
+        return new TransactionDto(UUID.randomUUID(), r.getOwnerId(), "**** **** **** 0001", "**** **** **** 0002",
+                r.getAmount(), TransactionStatus.SUCCESS, LocalDateTime.now(), "OK");
+    }
+
+    @Test
+    void concurrentTransfers_areCommittedTogether() throws Exception {
+        when(transferService.transferGroup(anyList())).thenAnswer(inv -> {
+            List<TransferRequest> reqs = inv.getArgument(0);
+            return reqs.stream().map(GroupCommitTransferExecutorTest::dto).collect(Collectors.toList());
+        });
+        start(4, 200);
+
+        var a = req("1");
+        var b = req("2");
+        var fa = CompletableFuture.supplyAsync(() -> executor.execute(a), callers);
+        var fb = CompletableFuture.supplyAsync(() -> executor.execute(b), callers);
+
+        assertEquals(new BigDecimal("1"), fa.get().getAmount());
+        assertEquals(new BigDecimal("2"), fb.get().getAmount());
+        verify(transferService).transferGroup(argThat(l -> l.size() == 2));
+        verify(transferService, never()).transfer(any());
+    }
+
+    @Test
+    void failedGroup_fallsBackRowByRow_andOnlyFailingCallerGetsError() throws Exception {
+        when(transferService.transferGroup(anyList()))
+                .thenThrow(new IllegalArgumentException("Transfer #1: Insufficient funds"));
+        var ok = req("1");
+        var bad = req("1000");
+        when(transferService.transfer(ok)).thenReturn(dto(ok));
+        when(transferService.transfer(bad)).thenThrow(new IllegalArgumentException("Insufficient funds"));
+        start(2, 1000);
+
+        var fOk = CompletableFuture.supplyAsync(() -> executor.execute(ok), callers);
+        var fBad = CompletableFuture.supplyAsync(() -> executor.execute(bad), callers);
+
+        assertEquals(TransactionStatus.SUCCESS, fOk.get().getStatus());
+        var ex = assertThrows(Exception.class, fBad::get);
+        assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+        assertEquals("Insufficient funds", ex.getCause().getMessage());
+    }
+
+    @Test
+    void stop_failsTransfersLeftInQueue() throws Exception {
+        idle(30000);
+        var f = CompletableFuture.supplyAsync(() -> executor.execute(req("1")), callers);
+        Thread.sleep(100);
+
+        executor.stop();
+
+        var e = assertThrows(ExecutionException.class, () -> f.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(BackpressureException.class, e.getCause());
+        verifyNoInteractions(transferService);
+    }
+
+    @Test
+    void queuedTransfer_timesOutWithBackpressureAndIsNotExecuted() throws Exception {
+        idle(100);
+
+        assertThrows(BackpressureException.class, () -> executor.execute(req("1")));
+
+        // перевод снят с очереди: запущенные воркеры его уже не выполнят
+        executor.start();
+        Thread.sleep(200);
+        verifyNoInteractions(transferService);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.entity.enums.CardStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryBalanceEngineTest {
+
+    @Mock JdbcTemplate jdbc;
+    @Mock PlatformTransactionManager txManager;
+    @Mock CardAggregates aggregates;
+    @Mock CardService cardService;
+    @TempDir Path dir;
+
+    UUID ownerId = UUID.randomUUID();
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+
+    // строки cards «в БД»: отложенная запись замокана, поэтому они не меняются
+    Map<UUID, InMemoryBalanceEngine.CardState> db = new HashMap<>();
+    InMemoryBalanceEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        db.put(a, new InMemoryBalanceEngine.CardState(ownerId, CardStatus.ACTIVE, 100_00, "1111"));
+        db.put(b, new InMemoryBalanceEngine.CardState(ownerId, CardStatus.ACTIVE, 0, "2222"));
+        when(jdbc.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+        // отложенная запись: UPDATE cards находит только карты, которые есть «в БД»
+        lenient().when(jdbc.batchUpdate(anyString(), anyList())).thenAnswer(inv -> {
+            String sql = inv.getArgument(0);
+            List<Object[]> rows = inv.getArgument(1);
+            int[] counts = new int[rows.size()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = sql.startsWith("update cards") && !db.containsKey((UUID) rows.get(i)[1]) ? 0 : 1;
+            }
+            return counts;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (engine != null) engine.stop();
+    }
+
+    private InMemoryBalanceEngine start() throws Exception {
+        InMemoryBalanceEngine e = new InMemoryBalanceEngine(jdbc, txManager, aggregates, cardService, new SimpleMeterRegistry(),
+                1024, dir.resolve("balance.journal").toString(), 1, 64, 60_000, 1000, 30_000) {
+            @Override
+            CardState loadCard(UUID id) {
+                CardState s = db.get(id);
+                return s == null ? null : new CardState(s.ownerId, s.status, s.balance, s.last4);
+            }
+        };
+        e.start();
+        return e;
+    }
+
+    private TransferRequest req(UUID from, UUID to, String amount) {
+        TransferRequest r = new TransferRequest();
+        r.setOwnerId(ownerId);
+        r.setFromCardId(from);
+        r.setToCardId(to);
+        r.setAmount(new BigDecimal(amount));
+        return r;
+    }
+
+    @Test
+    void transferAndTopUp_areAppliedInMemory() throws Exception {
+        engine = start();
+
+        var dto = engine.transfer(req(a, b, "30.50"));
+        engine.topUp(b, new BigDecimal("5"));
+
+        assertEquals(new BigDecimal("30.50"), dto.getAmount());
+        assertEquals("**** **** **** 2222", dto.getToMasked());
+        var ex = assertThrows(IllegalArgumentException.class, () -> engine.transfer(req(a, b, "69.51")));
+        assertEquals("Insufficient funds", ex.getMessage());
+        engine.transfer(req(a, b, "69.50"));
+    }
+
+    @Test
+    void batch_isAllOrNothing() throws Exception {
+        engine = start();
+
+        var ex = assertThrows(IllegalArgumentException.class,
+                () -> engine.transferBatch(ownerId, java.util.List.of(req(a, b, "60"), req(a, b, "60"))));
+        assertTrue(ex.getMessage().startsWith("Transfer #1"));
+        // первый перевод пакета не применился
+        engine.transfer(req(a, b, "100"));
+    }
+
+    @Test
+    void restart_rebuildsStateFromCheckpointAndJournal() throws Exception {
+        engine = start();
+        engine.transfer(req(a, b, "70"));
+        engine.stop();
+
+        // контрольная точка осталась 0, строки cards прежние — состояние восстанавливается из журнала
+        engine = start();
+        assertThrows(IllegalArgumentException.class, () -> engine.transfer(req(a, b, "30.01")));
+        engine.transfer(req(b, a, "70"));
+    }
+
+    @Test
+    void deleteCard_flushesPendingOperationsFirst() throws Exception {
+        engine = start();
+        engine.transfer(req(a, b, "100"));
+        when(cardService.delete(a)).thenReturn(true);
+
+        assertTrue(engine.deleteCard(a));
+
+        var order = inOrder(jdbc, cardService);
+        order.verify(jdbc).batchUpdate(startsWith("update cards"), anyList());
+        order.verify(cardService).delete(a);
+    }
+
+    @Test
+    void deleteCard_withBalance_isRejected() throws Exception {
+        engine = start();
+        engine.topUp(b, new BigDecimal("5"));
+
+        var ex = assertThrows(IllegalStateException.class, () -> engine.deleteCard(b));
+        assertEquals("Card has non-zero balance", ex.getMessage());
+        verify(cardService, never()).delete(any());
+    }
+
+    @Test
+    void batchLargerThanJournal_isRejectedWithoutChangingBalances() throws Exception {
+        engine = start();
+        // журнал в 1 МБ вмещает около 10 800 записей
+        List<TransferRequest> reqs = new java.util.ArrayList<>();
+        for (int i = 0; i < 11_000; i++) reqs.add(i % 2 == 0 ? req(a, b, "0.01") : req(b, a, "0.01"));
+
+        var ex = assertThrows(IllegalArgumentException.class, () -> engine.transferBatch(ownerId, reqs));
+        assertEquals("Too many transfers for one batch", ex.getMessage());
+        engine.transfer(req(a, b, "100"));
+        assertThrows(IllegalArgumentException.class, () -> engine.transfer(req(a, b, "0.01")));
+    }
+
+    @Test
+    void cardChange_isReloadedBeforeNextOperation() throws Exception {
+        engine = start();
+        engine.topUp(a, new BigDecimal("1"));
+        db.put(a, new InMemoryBalanceEngine.CardState(ownerId, CardStatus.BLOCKED, 100_00, "1111"));
+
+        engine.onCardChanged(new CardChangedEvent(a));
+
+        var ex = assertThrows(IllegalArgumentException.class, () -> engine.transfer(req(a, b, "1")));
+        assertEquals("From card is not ACTIVE: BLOCKED", ex.getMessage());
+    }
+
+    @Test
+    void deleteCard_closesCardForOperationsUntilDone() throws Exception {
+        engine = start();
+        engine.transfer(req(a, b, "100"));
+        when(cardService.delete(a)).thenAnswer(inv -> {
+            var ex = assertThrows(IllegalStateException.class, () -> engine.transfer(req(b, a, "1")));
+            assertEquals("Card is being deleted", ex.getMessage());
+            return true;
+        });
+
+        assertTrue(engine.deleteCard(a));
+
+        // строки карты больше нет — движок забывает её
+        db.remove(a);
+        assertThrows(jakarta.persistence.EntityNotFoundException.class, () -> engine.transfer(req(b, a, "1")));
+    }
+
+    @Test
+    void flush_failsWhenCardRowIsMissing() throws Exception {
+        engine = start();
+        engine.topUp(b, new BigDecimal("5"));
+        // карту удалили в обход движка
+        db.remove(b);
+
+        assertThrows(InMemoryBalanceEngine.LostCardException.class, () -> engine.flushAll());
+        verify(jdbc, never()).update(startsWith("update balance_engine_checkpoint"), any(Object[].class));
+        db.put(b, new InMemoryBalanceEngine.CardState(ownerId, CardStatus.ACTIVE, 0, "2222"));
+    }
+}
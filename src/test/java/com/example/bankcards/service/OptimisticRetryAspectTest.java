@@ -0,0 +1,65 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimisticRetryAspectTest {
+
+    static class Target {
+        final AtomicInteger calls = new AtomicInteger();
+        int failures;
+
+        @OptimisticRetry("test")
+        public String run() {
+            if (calls.incrementAndGet() <= failures) {
+                throw new ObjectOptimisticLockingFailureException("Card", "id");
+            }
+            return "ok";
+        }
+    }
+
+    private Target proxy(Target target, TransferMode mode, SimpleMeterRegistry registry) {
+        AspectJProxyFactory f = new AspectJProxyFactory(target);
+        f.setProxyTargetClass(true);
+        f.addAspect(new OptimisticRetryAspect(mode, 3, 0, 0, registry));
+        return f.getProxy();
+    }
+
+    @Test
+    void retriesUntilSuccess_andCountsRetries() {
+        var registry = new SimpleMeterRegistry();
+        Target target = new Target();
+        target.failures = 2;
+
+        assertEquals("ok", proxy(target, TransferMode.OPTIMISTIC, registry).run());
+        assertEquals(3, target.calls.get());
+        assertEquals(2.0, registry.get("bank.transfer.optimistic.retries").tag("operation", "test").counter().count());
+    }
+
+    @Test
+    void exhaustedAttempts_throwConflict() {
+        var registry = new SimpleMeterRegistry();
+        Target target = new Target();
+        target.failures = 10;
+
+        assertThrows(IllegalStateException.class, () -> proxy(target, TransferMode.OPTIMISTIC, registry).run());
+        assertEquals(3, target.calls.get());
+        assertEquals(1.0, registry.get("bank.transfer.optimistic.exhausted").counter().count());
+    }
+
+    @Test
+    void otherModes_doNotRetry() {
+        Target target = new Target();
+        target.failures = 1;
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> proxy(target, TransferMode.PESSIMISTIC, new SimpleMeterRegistry()).run());
+        assertEquals(1, target.calls.get());
+    }
+}
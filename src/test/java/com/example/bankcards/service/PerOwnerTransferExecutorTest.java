@@ -0,0 +1,108 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.exception.BackpressureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PerOwnerTransferExecutorTest {
+
+    @Mock TransferService transferService;
+
+    PerOwnerTransferExecutor executor;
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() throws Exception {
+        callers.shutdownNow();
+        executor.stop();
+    }
+
+    private static TransferRequest req(UUID ownerId) {
+        TransferRequest r = new TransferRequest();
+        r.setOwnerId(ownerId);
+        r.setFromCardId(UUID.randomUUID());
+        r.setToCardId(UUID.randomUUID());
+        r.setAmount(BigDecimal.ONE);
+        return r;
+    }
+
+    @Test
+    void fullLane_rejectsWith429() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferService.transfer(any())).thenAnswer(inv -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new TransactionDto(UUID.randomUUID(), UUID.randomUUID(), "a", "b",
+                    BigDecimal.ONE, TransactionStatus.SUCCESS, LocalDateTime.now(), "OK");
+        });
+        executor = new PerOwnerTransferExecutor(transferService, new SimpleMeterRegistry(), 1, 1, 30_000);
+        UUID owner = UUID.randomUUID();
+
+        var first = CompletableFuture.supplyAsync(() -> executor.execute(req(owner)), callers);
+        assertTrue(running.await(5, TimeUnit.SECONDS));      // первый выполняется
+        var second = CompletableFuture.supplyAsync(() -> executor.execute(req(owner)), callers);
+        while (executor.laneFor(owner).getQueue().isEmpty()) Thread.onSpinWait(); // второй ждёт в полосе
+
+        assertThrows(BackpressureException.class, () -> executor.execute(req(owner)));
+
+        release.countDown();
+        assertEquals(TransactionStatus.SUCCESS, first.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransactionStatus.SUCCESS, second.get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void serviceErrors_propagateToCaller() {
+        when(transferService.transfer(any())).thenThrow(new IllegalArgumentException("Insufficient funds"));
+        executor = new PerOwnerTransferExecutor(transferService, new SimpleMeterRegistry(), 2, 8, 30_000);
+
+        var ex = assertThrows(IllegalArgumentException.class, () -> executor.execute(req(UUID.randomUUID())));
+        assertEquals("Insufficient funds", ex.getMessage());
+    }
+
+    @Test
+    void slowLane_timesOutWith429WhileQueuedAnd409WhileRunning() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transferService.transfer(any())).thenAnswer(inv -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new TransactionDto(UUID.randomUUID(), UUID.randomUUID(), "a", "b",
+                    BigDecimal.ONE, TransactionStatus.SUCCESS, LocalDateTime.now(), "OK");
+        });
+        executor = new PerOwnerTransferExecutor(transferService, new SimpleMeterRegistry(), 1, 4, 200);
+        UUID owner = UUID.randomUUID();
+
+        var first = CompletableFuture.supplyAsync(() -> executor.execute(req(owner)), callers);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        // второй так и не начался — снят с полосы
+        assertThrows(BackpressureException.class, () -> executor.execute(req(owner)));
+        assertTrue(executor.laneFor(owner).getQueue().isEmpty());
+
+        var ex = assertThrows(java.util.concurrent.ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        release.countDown();
+        verify(transferService, timeout(1000).times(1)).transfer(any());
+    }
+}
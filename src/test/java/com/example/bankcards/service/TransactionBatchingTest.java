@@ -0,0 +1,152 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferRequest;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// профиль write-optimized: пакетный перевод отправляет строки transactions JDBC-батчами по batch_size,
+// без отдельного INSERT на строку. UPDATE карт профиль не батчит — их по одному на карту.
+// Размеры батчей снимаются с PreparedStatement, т. е. ровно то, что уходит драйверу
+@BankJpaTest(properties = "HIBERNATE_BATCH_SIZE=50")
+@ActiveProfiles("write-optimized")
+@Import({TransferService.class, TransactionBatchingTest.Recording.class})
+class TransactionBatchingTest {
+
+    // выполненные команды: SQL и число строк в вызове (executeBatch — размер батча, executeUpdate — 1)
+    static final List<String[]> EXECUTED = Collections.synchronizedList(new ArrayList<>());
+
+    @TestConfiguration
+    static class Recording {
+        @Bean
+        static BeanPostProcessor recordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String name) {
+                    return bean instanceof DataSource ? new RecordingDataSource((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+
+    static final class RecordingDataSource extends DelegatingDataSource {
+        RecordingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrap(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrap(super.getConnection(username, password));
+        }
+
+        private static Connection wrap(Connection con) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(con, method, args);
+                        if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement) {
+                            return wrap((PreparedStatement) result, (String) args[0]);
+                        }
+                        return result;
+                    });
+        }
+
+        private static PreparedStatement wrap(PreparedStatement ps, String sql) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        Object result = invoke(ps, method, args);
+                        if (method.getName().equals("executeBatch")) {
+                            EXECUTED.add(new String[]{sql, String.valueOf(((int[]) result).length)});
+                        } else if (method.getName().equals("executeUpdate") && (args == null || args.length == 0)) {
+                            EXECUTED.add(new String[]{sql, "1"});
+                        }
+                        return result;
+                    });
+        }
+
+        private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Autowired TransferService transferService;
+    @Autowired TestEntityManager em;
+    @Autowired EntityManagerFactory emf;
+    @Autowired BankFixtures fixtures;
+
+    UUID ownerId;
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        ownerId = fixtures.user("batching");
+        for (UUID id : List.of(a, b)) {
+            fixtures.card(ownerId).id(id).balance("1000").insert();
+        }
+        EXECUTED.clear();
+    }
+
+    private List<Integer> sizes(String prefix) {
+        return EXECUTED.stream()
+                .filter(e -> e[0].toLowerCase(Locale.ROOT).startsWith(prefix))
+                .map(e -> Integer.parseInt(e[1]))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void batchTransfer_batchesTransactionInsertsButNotCardUpdates() {
+        int batchSize = Integer.parseInt(String.valueOf(emf.getProperties().get("hibernate.jdbc.batch_size")));
+        assertEquals(50, batchSize);
+
+        List<TransferRequest> reqs = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            TransferRequest r = new TransferRequest();
+            r.setOwnerId(ownerId);
+            r.setFromCardId(a);
+            r.setToCardId(b);
+            r.setAmount(new BigDecimal("1.00"));
+            reqs.add(r);
+        }
+        transferService.transferBatch(ownerId, reqs);
+        em.flush();
+
+        // 120 строк при batch_size=50 — три батча, без одиночных INSERT
+        assertEquals(List.of(50, 50, 20), sizes("insert into transactions"));
+        // карты — по одному UPDATE на карту, а не на перевод, и вне батча: номер карты ленивый и не загружен,
+        // поэтому Hibernate 6.2 пишет динамический UPDATE, а такие он не батчит
+        assertEquals(List.of(1, 1), sizes("update cards"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.bankcards.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// выгрузка истории: все строки по порядку от старых к новым, фильтр по датам включительно, CSV по RFC 4180
+@BankJpaTest(properties = "bank.history.export.fetch-size=3")
+@Import({TransactionExportService.class, JacksonAutoConfiguration.class})
+class TransactionExportTest {
+
+    @Autowired TransactionExportService exportService;
+    @Autowired BankFixtures fixtures;
+    @Autowired ObjectMapper mapper;
+
+    UUID ownerId;
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+    UUID c = UUID.randomUUID();
+    LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        ownerId = fixtures.user("export");
+        fixtures.card(ownerId).id(a).last4("1111").insert();
+        fixtures.card(ownerId).id(b).last4("2222").insert();
+        fixtures.card(ownerId).id(c).last4("3333").insert();
+        // по переводу в день: a→b, b→a, ...; в последний день b→c с «неудобным» сообщением
+        for (int i = 0; i < 10; i++) {
+            boolean forward = i % 2 == 0;
+            fixtures.transfer(ownerId, forward ? a : b, forward ? b : a, "1.50", t0.plusDays(i), "OK");
+        }
+        fixtures.transfer(ownerId, b, c, "1.50", t0.plusDays(9), "note, with \"quotes\"");
+    }
+
+    private String write(TransactionExportService.Export export, ExportFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.write(export, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void ndjson_byUser_allRowsOldestFirst() throws Exception {
+        String body = write(exportService.byUser(ownerId, null, null), ExportFormat.NDJSON);
+
+        String[] lines = body.split("\n");
+        assertEquals(11, lines.length);
+        assertTrue(body.endsWith("\n"));
+        LocalDateTime prev = null;
+        for (String line : lines) {
+            JsonNode n = mapper.readTree(line);
+            LocalDateTime at = LocalDateTime.parse(n.get("createdAt").asText());
+            if (prev != null) assertFalse(at.isBefore(prev));
+            prev = at;
+        }
+        JsonNode first = mapper.readTree(lines[0]);
+        assertEquals("**** **** **** 1111", first.get("fromMasked").asText());
+        assertEquals("**** **** **** 2222", first.get("toMasked").asText());
+    }
+
+    @Test
+    void ndjson_byCard_filtersByInclusiveDates() throws Exception {
+        // a участвует во всех 10 переводах a↔b, b→c его не касается; дни 2..4 — три перевода
+        assertEquals(10, write(exportService.byCard(a, null, null), ExportFormat.NDJSON).split("\n").length);
+        String body = write(exportService.byCard(a, LocalDate.of(2024, 1, 3), LocalDate.of(2024, 1, 5)), ExportFormat.NDJSON);
+        assertEquals(3, body.split("\n").length);
+
+        var ex = assertThrows(IllegalArgumentException.class,
+                () -> exportService.byCard(a, LocalDate.of(2024, 2, 1), LocalDate.of(2024, 1, 1)));
+        assertTrue(ex.getMessage().contains("from"));
+    }
+
+    @Test
+    void csv_hasHeaderAndQuotesMessages() throws Exception {
+        String body = write(exportService.byCard(c, null, null), ExportFormat.CSV);
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("id,owner,fromMasked,toMasked,amount,status,createdAt,message", lines[0]);
+        assertTrue(lines[1].endsWith(",**** **** **** 2222,**** **** **** 3333,1.50,SUCCESS,2024-01-10T12:00,\"note, with \"\"quotes\"\"\""),
+                lines[1]);
+    }
+}
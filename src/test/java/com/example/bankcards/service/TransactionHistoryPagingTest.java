@@ -0,0 +1,107 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransactionSlice;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// история переводов: страницы по курсору без пропусков и повторов, в том числе при одинаковом created_at;
+// страница — один запрос-проекция без загрузки сущностей
+@BankJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TransferService.class)
+class TransactionHistoryPagingTest {
+
+    @Autowired TransferService transferService;
+    @Autowired BankFixtures fixtures;
+    @Autowired EntityManagerFactory emf;
+
+    UUID ownerId;
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+    UUID c = UUID.randomUUID();
+    LocalDateTime t0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        ownerId = fixtures.user("history");
+        for (UUID id : List.of(a, b, c)) {
+            fixtures.card(ownerId).id(id).insert();
+        }
+        // a→b и b→a вперемешку, по три перевода на одну и ту же секунду; b→c карту a не касается
+        for (int i = 0; i < 9; i++) {
+            boolean forward = i % 2 == 0;
+            fixtures.transfer(ownerId, forward ? a : b, forward ? b : a, t0.plusSeconds(i / 3));
+        }
+        fixtures.transfer(ownerId, b, c, t0.plusSeconds(1));
+    }
+
+    private List<TransactionDto> walk(Function<UUID, TransactionSlice> page) {
+        List<TransactionDto> all = new ArrayList<>();
+        UUID cursor = null;
+        do {
+            TransactionSlice s = page.apply(cursor);
+            assertTrue(s.getItems().size() <= 4);
+            all.addAll(s.getItems());
+            cursor = s.getNextCursor();
+        } while (cursor != null);
+        return all;
+    }
+
+    private static void assertNewestFirst(List<TransactionDto> list) {
+        for (int i = 1; i < list.size(); i++) {
+            assertFalse(list.get(i).getCreatedAt().isAfter(list.get(i - 1).getCreatedAt()));
+        }
+    }
+
+    @Test
+    void byCard_pagesCoverBothDirectionsOnce() {
+        List<TransactionDto> all = walk(before -> transferService.getByCard(a, before, 4));
+
+        assertEquals(9, all.size());
+        assertEquals(9, new HashSet<>(all.stream().map(TransactionDto::getId).collect(Collectors.toList())).size());
+        assertNewestFirst(all);
+    }
+
+    @Test
+    void byUser_pagesCoverAllTransfers() {
+        List<TransactionDto> all = walk(before -> transferService.getByUser(ownerId, before, 4));
+
+        assertEquals(10, all.size());
+        assertEquals(10, new HashSet<>(all.stream().map(TransactionDto::getId).collect(Collectors.toList())).size());
+        assertNewestFirst(all);
+    }
+
+    @Test
+    void unknownCursorOrBadSize_isBadRequest() {
+        assertThrows(IllegalArgumentException.class, () -> transferService.getByCard(a, UUID.randomUUID(), 4));
+        assertThrows(IllegalArgumentException.class, () -> transferService.getByUser(ownerId, null, 0));
+    }
+
+    @Test
+    void historyPage_isOneStatementWithoutEntities() {
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        List<TransactionDto> page = transferService.getByCard(a, null, 4).getItems();
+
+        assertEquals(4, page.size());
+        assertEquals("**** **** **** 0000", page.get(0).getFromMasked());
+        assertEquals(1, stats.getPrepareStatementCount());
+        assertEquals(0, stats.getEntityLoadCount());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// план прохода обслуживания секций: что досоздать впереди и что отправить в архив по сроку хранения
+class TransactionPartitionMaintenanceTest {
+
+    private static final YearMonth NOW = YearMonth.of(2026, 10);
+
+    private static Set<YearMonth> months(YearMonth from, YearMonth to) {
+        Set<YearMonth> s = new TreeSet<>();
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) s.add(m);
+        return s;
+    }
+
+    @Test
+    void plan_createsMissingMonthsAhead() {
+        Set<YearMonth> attached = months(YearMonth.of(2026, 8), YearMonth.of(2026, 11));
+
+        TransactionPartitionMaintenance.Plan plan =
+                TransactionPartitionMaintenance.plan(attached, Set.of(), Set.of(), NOW, 3, 0);
+
+        assertEquals(List.of(YearMonth.of(2026, 12), YearMonth.of(2027, 1)), plan.getCreate());
+        assertTrue(plan.getArchive().isEmpty());
+    }
+
+    @Test
+    void plan_archivesMonthsPastRetention() {
+        Set<YearMonth> attached = months(YearMonth.of(2024, 6), YearMonth.of(2027, 1));
+        Set<YearMonth> pending = Set.of(YearMonth.of(2024, 5));
+        Set<YearMonth> detached = Set.of(YearMonth.of(2024, 4));
+
+        TransactionPartitionMaintenance.Plan plan =
+                TransactionPartitionMaintenance.plan(attached, pending, detached, NOW, 3, 24);
+
+        assertTrue(plan.getCreate().isEmpty());
+        // хранятся 24 полных месяца до текущего: октябрь 2024 и новее
+        assertEquals(List.of(YearMonth.of(2024, 4), YearMonth.of(2024, 5), YearMonth.of(2024, 6), YearMonth.of(2024, 7),
+                YearMonth.of(2024, 8), YearMonth.of(2024, 9)), plan.getArchive());
+    }
+
+    @Test
+    void plan_withoutRetention_keepsEverything() {
+        Set<YearMonth> attached = months(YearMonth.of(2010, 1), YearMonth.of(2027, 1));
+
+        TransactionPartitionMaintenance.Plan plan =
+                TransactionPartitionMaintenance.plan(attached, Set.of(), Set.of(), NOW, 3, 0);
+
+        assertTrue(plan.isEmpty());
+    }
+
+    @Test
+    void partitionName_roundTrips() {
+        assertEquals("transactions_p202610", TransactionPartitionMaintenance.name(NOW));
+        assertEquals(NOW, TransactionPartitionMaintenance.month("transactions_p202610"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransactionDto;
+import com.example.bankcards.dto.TransferRequest;
+import com.example.bankcards.entity.Card;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// число SQL-команд одного перевода на H2: схема из сущностей, liquibase выключен
+@BankJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TransferService.class)
+class TransferServiceSqlTest {
+
+    @Autowired TransferService transferService;
+    @Autowired TestEntityManager em;
+    @Autowired EntityManagerFactory emf;
+    @Autowired BankFixtures fixtures;
+
+    UUID ownerId;
+    UUID fromId = UUID.randomUUID();
+    UUID toId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        ownerId = fixtures.user("sql-test");
+        fixtures.card(ownerId).id(fromId).last4("1111").balance("1000.00").insert();
+        fixtures.card(ownerId).id(toId).last4("2222").insert();
+    }
+
+    private TransferRequest req() {
+        TransferRequest req = new TransferRequest();
+        req.setOwnerId(ownerId);
+        req.setFromCardId(fromId);
+        req.setToCardId(toId);
+        req.setAmount(new BigDecimal("250.00"));
+        return req;
+    }
+
+    @Test
+    void transfer_issuesOneLockingSelectOneInsertAndTwoUpdates() {
+        TransferRequest req = req();
+
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        transferService.transfer(req);
+        em.flush();
+
+        // SELECT ... FOR UPDATE по обеим картам, INSERT transactions, два UPDATE cards.
+        // Без SELECT по users: владелец — ссылка, его id сверяется с owner_id заблокированных карт.
+        // Номер карты ленивый: его нет ни в SELECT, ни в UPDATE, шифр не вызывается.
+        assertEquals(4, stats.getPrepareStatementCount());
+        assertEquals(1, stats.getQueryExecutionCount());
+        assertEquals(2, stats.getEntityLoadCount());
+        assertEquals(2, stats.getEntityUpdateCount());
+        assertEquals(1, stats.getEntityInsertCount());
+    }
+
+    @Test
+    void transferConditional_issuesTwoUpdatesAndOneInsertWithoutSelect() {
+        ReflectionTestUtils.setField(transferService, "mode", TransferMode.CONDITIONAL);
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        TransactionDto result = transferService.transfer(req());
+        em.flush();
+
+        // два условных UPDATE cards (last4 возвращают они же) и INSERT transactions: ни карты, ни владелец не читаются
+        assertEquals(3, stats.getPrepareStatementCount());
+        assertEquals(0, stats.getEntityLoadCount());
+        assertEquals(Card.mask("1111"), result.getFromMasked());
+        assertEquals(Card.mask("2222"), result.getToMasked());
+        em.clear();
+        assertEquals(0, new BigDecimal("750.00").compareTo(em.find(Card.class, fromId).getBalance()));
+        assertEquals(0, new BigDecimal("250.00").compareTo(em.find(Card.class, toId).getBalance()));
+    }
+}
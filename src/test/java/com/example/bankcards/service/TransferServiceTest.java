@@ -8,14 +8,18 @@ import com.example.bankcards.entity.enums.TransactionStatus;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.TransactionRepository;
 import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.UuidOrder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -71,10 +75,8 @@ class TransferServiceTest {
 
     @Test
     void transfer_success() {
-        when(userRepository.findById(ownerId)).thenReturn(Optional.of(owner));
-        // сервис может вызывать findByIdForUpdate или findById — подстрахуемся обоими
-        when(cardRepository.findByIdForUpdate(fromId)).thenReturn(Optional.of(from));
-        when(cardRepository.findByIdForUpdate(toId)).thenReturn(Optional.of(to));
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
         when(transactionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
         var result = service.transfer(req(new BigDecimal("250")));
@@ -92,9 +94,8 @@ class TransferServiceTest {
 
     @Test
     void transfer_insufficientFunds_throws400() {
-        when(userRepository.findById(ownerId)).thenReturn(Optional.of(owner));
-        when(cardRepository.findByIdForUpdate(fromId)).thenReturn(Optional.of(from));
-        when(cardRepository.findByIdForUpdate(toId)).thenReturn(Optional.of(to));
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
 
         IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
                 () -> service.transfer(req(new BigDecimal("5000"))));
@@ -105,9 +106,8 @@ class TransferServiceTest {
     @Test
     void transfer_nonActiveFrom_throws400() {
         from.setStatus(CardStatus.BLOCKED);
-        when(userRepository.findById(ownerId)).thenReturn(Optional.of(owner));
-        when(cardRepository.findByIdForUpdate(fromId)).thenReturn(Optional.of(from));
-        when(cardRepository.findByIdForUpdate(toId)).thenReturn(Optional.of(to));
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
 
         var ex = assertThrows(IllegalArgumentException.class,
                 () -> service.transfer(req(new BigDecimal("10"))));
@@ -117,9 +117,8 @@ class TransferServiceTest {
     @Test
     void transfer_nonActiveTo_throws400() {
         to.setStatus(CardStatus.BLOCK_REQUESTED);
-        when(userRepository.findById(ownerId)).thenReturn(Optional.of(owner));
-        when(cardRepository.findByIdForUpdate(fromId)).thenReturn(Optional.of(from));
-        when(cardRepository.findByIdForUpdate(toId)).thenReturn(Optional.of(to));
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
 
         var ex = assertThrows(IllegalArgumentException.class,
                 () -> service.transfer(req(new BigDecimal("10"))));
@@ -132,12 +131,108 @@ class TransferServiceTest {
         other.setId(UUID.randomUUID());
         to.setOwner(other);
 
-        when(userRepository.findById(ownerId)).thenReturn(Optional.of(owner));
-        when(cardRepository.findByIdForUpdate(fromId)).thenReturn(Optional.of(from));
-        when(cardRepository.findByIdForUpdate(toId)).thenReturn(Optional.of(to));
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
 
         var ex = assertThrows(IllegalArgumentException.class,
                 () -> service.transfer(req(new BigDecimal("10"))));
         assertTrue(ex.getMessage().toLowerCase().contains("same user"));
     }
+
+    @Test
+    void transferBatch_locksAllCardsOnceAndSavesAllTransactions() {
+        when(userRepository.findAllById(any())).thenReturn(List.of(owner));
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
+
+        TransferRequest back = req(new BigDecimal("5"));
+        back.setFromCardId(toId);
+        back.setToCardId(fromId);
+
+        var result = service.transferBatch(ownerId, List.of(req(new BigDecimal("100")), back));
+
+        assertEquals(2, result.size());
+        assertEquals(new BigDecimal("905"), from.getBalance());
+        assertEquals(new BigDecimal("105"), to.getBalance());
+
+        // одна блокировка на все карты, id отсортированы
+        ArgumentCaptor<List<UUID>> ids = ArgumentCaptor.forClass(List.class);
+        verify(cardRepository).findAllByIdForUpdate(ids.capture());
+        List<UUID> sorted = new ArrayList<>(ids.getValue());
+        sorted.sort(UuidOrder.COMPARATOR);
+        assertEquals(sorted, ids.getValue());
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        verify(transactionRepository).saveAll(argThat(l -> ((List<?>) l).size() == 2));
+    }
+
+    @Test
+    void transferBatch_insufficientFundsOnRunningBalance_throws400() {
+        when(userRepository.findAllById(any())).thenReturn(List.of(owner));
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from, to));
+
+        var ex = assertThrows(IllegalArgumentException.class,
+                () -> service.transferBatch(ownerId, List.of(req(new BigDecimal("600")), req(new BigDecimal("600")))));
+        assertTrue(ex.getMessage().startsWith("Transfer #1"));
+        verify(transactionRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void transferConditional_updatesInIdOrderWithoutLocking() {
+        ReflectionTestUtils.setField(service, "mode", TransferMode.CONDITIONAL);
+        when(cardRepository.debitIfActive(fromId, ownerId, new BigDecimal("250"))).thenReturn(Optional.of("1111"));
+        when(cardRepository.creditIfActive(toId, ownerId, new BigDecimal("250"))).thenReturn(Optional.of("2222"));
+
+        var result = service.transfer(req(new BigDecimal("250")));
+
+        assertEquals(TransactionStatus.SUCCESS, result.getStatus());
+        assertEquals(Card.mask("1111"), result.getFromMasked());
+        assertEquals(Card.mask("2222"), result.getToMasked());
+        boolean debitFirst = UuidOrder.COMPARATOR.compare(fromId, toId) < 0;
+        var order = inOrder(cardRepository);
+        if (debitFirst) {
+            order.verify(cardRepository).debitIfActive(fromId, ownerId, new BigDecimal("250"));
+            order.verify(cardRepository).creditIfActive(toId, ownerId, new BigDecimal("250"));
+        } else {
+            order.verify(cardRepository).creditIfActive(toId, ownerId, new BigDecimal("250"));
+            order.verify(cardRepository).debitIfActive(fromId, ownerId, new BigDecimal("250"));
+        }
+        verify(cardRepository, never()).findByIdForUpdate(any());
+        verify(cardRepository, never()).findAllById(any());
+        verify(transactionRepository).save(any());
+    }
+
+    @Test
+    void transferConditional_rejectedDebit_reportsInsufficientFunds() {
+        ReflectionTestUtils.setField(service, "mode", TransferMode.CONDITIONAL);
+        lenient().when(cardRepository.creditIfActive(toId, ownerId, new BigDecimal("5000"))).thenReturn(Optional.of("2222"));
+        when(cardRepository.debitIfActive(fromId, ownerId, new BigDecimal("5000"))).thenReturn(Optional.empty());
+        when(cardRepository.findById(fromId)).thenReturn(Optional.of(from));
+
+        var ex = assertThrows(IllegalArgumentException.class,
+                () -> service.transfer(req(new BigDecimal("5000"))));
+        assertTrue(ex.getMessage().toLowerCase().contains("insufficient"));
+        verify(transactionRepository, never()).save(any());
+    }
+
+    @Test
+    void transferOptimistic_readsCardsWithoutLock() {
+        ReflectionTestUtils.setField(service, "mode", TransferMode.OPTIMISTIC);
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllById(any())).thenReturn(List.of(from, to));
+
+        service.transfer(req(new BigDecimal("250")));
+
+        assertEquals(new BigDecimal("750"), from.getBalance());
+        verify(cardRepository, never()).findAllByIdForUpdate(any());
+    }
+
+    @Test
+    void transfer_missingCard_throwsNotFound() {
+        when(userRepository.getReferenceById(ownerId)).thenReturn(owner);
+        when(cardRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(from));
+
+        var ex = assertThrows(jakarta.persistence.EntityNotFoundException.class,
+                () -> service.transfer(req(new BigDecimal("10"))));
+        assertEquals("To-card not found", ex.getMessage());
+        verify(userRepository, never()).findById(any());
+    }
 }
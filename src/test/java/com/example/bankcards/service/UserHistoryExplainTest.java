@@ -0,0 +1,111 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.TransactionHistoryRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// история пользователя на реальном PostgreSQL (схема из Liquibase, миллион переводов):
+// запрос идёт по индексу (owner_id, created_at desc, id desc), а не полным сканом transactions,
+// карты страницы читаются по первичному ключу; выгрузка за период читает только секции своих месяцев.
+// Без Docker тест пропускается.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class UserHistoryExplainTest {
+
+    @Container
+    static final PostgreSQLContainer<?> PG = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry r) {
+        r.add("spring.datasource.url", PG::getJdbcUrl);
+        r.add("spring.datasource.username", PG::getUsername);
+        r.add("spring.datasource.password", PG::getPassword);
+    }
+
+    @Autowired JdbcTemplate jdbc;
+
+    @BeforeEach
+    void data() {
+        jdbc.execute("insert into users (id, username, password, role) " +
+                "select gen_random_uuid(), 'u' || g, 'x', 'USER' from generate_series(1, 1000) g");
+        jdbc.execute("insert into cards (id, owner_id, encrypted_card_number, expiry_date, status, balance, last4, pan_hash, version) " +
+                "select gen_random_uuid(), u.id, 'x', date '2030-01-01', 'ACTIVE', 0, '0000', md5(u.id::text || s), 0 " +
+                "from users u cross join generate_series(1, 2) s");
+        jdbc.execute("""
+                insert into transactions (id, owner_id, from_card_id, to_card_id, amount, status, created_at, message)
+                select gen_random_uuid(), c.owner_id, c.id, c.id, 1.00, 'SUCCESS',
+                       date_trunc('month', localtimestamp) + g * interval '1 second', 'OK'
+                from generate_series(1, 1000000) g
+                join (select id, owner_id, row_number() over () - 1 as rn from cards) c
+                  on c.rn = g % (select count(*) from cards)
+                """);
+        jdbc.execute("analyze users");
+        jdbc.execute("analyze cards");
+        jdbc.execute("analyze transactions");
+    }
+
+    @Test
+    void userHistory_usesOwnerIndex() {
+        UUID userId = jdbc.queryForObject("select owner_id from transactions limit 1", UUID.class);
+        Map<String, Object> params = Map.of(
+                "userId", userId,
+                "ts", LocalDateTime.of(9999, 12, 31, 0, 0),
+                "id", new UUID(-1L, -1L),
+                "n", 51);
+        String plan = explain(TransactionHistoryRow.USER_SQL, params);
+
+        // transactions секционирована: в плане индексы секций, созданные по ix_transactions_owner_created
+        assertTrue(plan.contains("_owner_id_created_at_id_idx"), plan);
+        assertFalse(plan.contains("Seq Scan on transactions"), plan);
+        assertFalse(plan.contains("Seq Scan on cards"), plan);
+    }
+
+    @Test
+    void userExport_readsOnlyPartitionsOfItsMonths() {
+        UUID userId = jdbc.queryForObject("select owner_id from transactions limit 1", UUID.class);
+        YearMonth now = YearMonth.now();
+        String plan = jdbc.queryForList("explain " + TransactionExportService.USER_SQL, String.class,
+                        userId, now.atDay(1).atStartOfDay(), now.atDay(2).atStartOfDay())
+                .stream().collect(Collectors.joining("\n"));
+
+        assertTrue(plan.contains(TransactionPartitionMaintenance.name(now)), plan);
+        assertFalse(plan.contains(TransactionPartitionMaintenance.name(now.plusMonths(1))), plan);
+        assertFalse(plan.contains(TransactionPartitionMaintenance.name(now.minusMonths(1))), plan);
+    }
+
+    // именованные параметры Spring Data -> позиционные для EXPLAIN
+    private String explain(String sql, Map<String, Object> params) {
+        List<Object> args = new ArrayList<>();
+        Matcher m = Pattern.compile(":(\\w+)").matcher(sql);
+        StringBuilder positional = new StringBuilder();
+        while (m.find()) {
+            args.add(params.get(m.group(1)));
+            m.appendReplacement(positional, "?");
+        }
+        m.appendTail(positional);
+        return jdbc.queryForList("explain " + positional, String.class, args.toArray())
+                .stream().collect(Collectors.joining("\n"));
+    }
+}
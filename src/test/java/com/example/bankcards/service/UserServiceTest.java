@@ -8,12 +8,15 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest {
@@ -21,6 +24,9 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private com.example.bankcards.security.CachingUserDetailsService userDetailsCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -73,4 +79,30 @@ class UserServiceTest {
                 .isInstanceOf(EntityNotFoundException.class)
                 .hasMessageContaining("User not found with username");
     }
+
+    @Test
+    void delete_evictsCachedUserDetails() {
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+
+        userService.delete(userId);
+
+        var order = inOrder(userRepository, userDetailsCache);
+        order.verify(userRepository).deleteById(userId);
+        order.verify(userDetailsCache).evict("testuser");
+    }
+
+    @Test
+    void delete_inTransaction_evictsOnlyAfterCommit() {
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            userService.delete(userId);
+            verify(userDetailsCache, never()).evict(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(userDetailsCache).evict("testuser");
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package com.example.bankcards.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Нормализация и HMAC номера карты: прежняя реализация (regex, Mac.getInstance на вызов) против текущей.
+// Запуск:
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.bankcards.util.PanHasherBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PanHasherBenchmark {
+
+    private static final String PEPPER = "benchmark-pepper";
+    private static final String PAN = "4111 1111 1111 1111";
+
+    private PanHasher hasher;
+
+    @Setup
+    public void setUp() {
+        hasher = new PanHasher(PEPPER);
+    }
+
+    @Benchmark
+    public String legacyNormalizeAndHash() throws Exception {
+        String normalized = PAN.replaceAll("\\s+", "");
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(PEPPER.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(normalized.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String normalizeAndHash() {
+        return hasher.hmacSha256Base64(PanHasher.normalize(PAN));
+    }
+
+    @Benchmark
+    public String normalizeOnly() {
+        return PanHasher.normalize(PAN);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PanHasherBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PanHasherTest {
+
+    @Test
+    void normalize_stripsSameCharactersAsRegex() {
+        for (String s : new String[]{"4111 1111 1111 1111", " 4111\t1111\n1111\r1111\f", "4111111111111111", "", "\u000B"}) {
+            assertEquals(s.replaceAll("\\s+", ""), PanHasher.normalize(s));
+        }
+        String clean = "5555555555554444";
+        assertSame(clean, PanHasher.normalize(clean));
+        assertNull(PanHasher.normalize(null));
+    }
+
+    @Test
+    void hmac_matchesFreshMacWithInjectedPepper() throws Exception {
+        PanHasher hasher = new PanHasher("test-pepper");
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("test-pepper".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String expected = Base64.getEncoder().encodeToString(mac.doFinal("4111111111111111".getBytes(StandardCharsets.UTF_8)));
+
+        // повторный вызов на том же потоке даёт тот же результат: Mac сбрасывается после doFinal
+        assertEquals(expected, hasher.hmacSha256Base64("4111111111111111"));
+        assertEquals(expected, hasher.hmacSha256Base64("4111111111111111"));
+        assertNotEquals(expected, new PanHasher("other-pepper").hmacSha256Base64("4111111111111111"));
+    }
+}
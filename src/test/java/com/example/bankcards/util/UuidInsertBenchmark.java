@@ -0,0 +1,126 @@
+package com.example.bankcards.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Вставка в таблицу с первичным ключом UUIDv4 (UUID.randomUUID) и UUIDv7 (UuidV7) на реальном PostgreSQL.
+// Таблица заранее заполняется preload строками, чтобы индекс PK не помещался в пару страниц;
+// JMH меряет строки в секунду (пакеты по batch строк, коммит на пакет), в конце печатается размер индекса PK
+// и, если установлено расширение pgstattuple, плотность его листовых страниц.
+// Запуск (нужен локальный PostgreSQL, база для бенчмарка — отдельная, таблицы bench_uuid_* создаются и удаляются):
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -Dbench.url=jdbc:postgresql://localhost:5432/bench -Dbench.user=postgres -Dbench.password=postgres \
+//        -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.bankcards.util.UuidInsertBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class UuidInsertBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"v4", "v7"})
+    public String kind;
+
+    @Param({"1000000"})
+    public int preload;
+
+    private Connection con;
+    private PreparedStatement insert;
+    private Supplier<UUID> ids;
+    private String table;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        con = DriverManager.getConnection(
+                System.getProperty("bench.url", "jdbc:postgresql://localhost:5432/bench"),
+                System.getProperty("bench.user", "postgres"),
+                System.getProperty("bench.password", "postgres"));
+        con.setAutoCommit(false);
+        ids = "v7".equals(kind) ? UuidV7::next : UUID::randomUUID;
+        table = "bench_uuid_" + kind;
+        try (Statement st = con.createStatement()) {
+            st.execute("drop table if exists " + table);
+            // та же ширина строки, что у transactions: ключ, владелец, сумма, время
+            st.execute("create table " + table + " (id uuid primary key, owner_id uuid not null, "
+                    + "amount numeric(19,2) not null, created_at timestamp not null default now())");
+        }
+        con.commit();
+        insert = con.prepareStatement("insert into " + table + " (id, owner_id, amount) values (?, ?, ?)");
+        for (int done = 0; done < preload; done += BATCH) {
+            insertBatch();
+        }
+        // VACUUM не выполняется внутри транзакции
+        con.setAutoCommit(true);
+        try (Statement st = con.createStatement()) {
+            st.execute("vacuum analyze " + table);
+        }
+        con.setAutoCommit(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int insertBatch() throws SQLException {
+        UUID owner = UUID.randomUUID();
+        for (int i = 0; i < BATCH; i++) {
+            insert.setObject(1, ids.get());
+            insert.setObject(2, owner);
+            insert.setBigDecimal(3, BigDecimal.ONE);
+            insert.addBatch();
+        }
+        int n = insert.executeBatch().length;
+        con.commit();
+        return n;
+    }
+
+    @TearDown(Level.Trial)
+    public void report() throws SQLException {
+        try (Statement st = con.createStatement()) {
+            try (ResultSet rs = st.executeQuery("select count(*), pg_size_pretty(pg_relation_size('" + table + "_pkey')), "
+                    + "pg_relation_size('" + table + "_pkey') from " + table)) {
+                rs.next();
+                System.out.printf("%n[%s] rows=%d, pk index=%s (%d bytes)%n", kind, rs.getLong(1), rs.getString(2), rs.getLong(3));
+            }
+            try (ResultSet rs = st.executeQuery("select avg_leaf_density, leaf_fragmentation from pgstatindex('" + table + "_pkey')")) {
+                rs.next();
+                System.out.printf("[%s] avg leaf density=%.1f%%, leaf fragmentation=%.1f%%%n", kind, rs.getDouble(1), rs.getDouble(2));
+            } catch (SQLException e) {
+                con.rollback();
+                System.out.printf("[%s] pgstattuple is not installed, leaf density skipped%n", kind);
+            }
+            st.execute("drop table " + table);
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // параметры подключения передаются в форкнутую JVM
+        List<String> jvmArgs = new ArrayList<>();
+        for (String p : new String[]{"bench.url", "bench.user", "bench.password"}) {
+            if (System.getProperty(p) != null) jvmArgs.add("-D" + p + "=" + System.getProperty(p));
+        }
+        new Runner(new OptionsBuilder()
+                .include(UuidInsertBenchmark.class.getSimpleName())
+                .jvmArgsAppend(jvmArgs.toArray(new String[0]))
+                .build()).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidV7Test {
+
+    @Test
+    void next_hasVersion7VariantAndCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7.next();
+        long after = System.currentTimeMillis();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        // при переполнении счётчика время может убежать вперёд на пару миллисекунд
+        assertTrue(UuidV7.timestamp(id) >= before && UuidV7.timestamp(id) <= after + 5);
+        assertThrows(IllegalArgumentException.class, () -> UuidV7.timestamp(UUID.randomUUID()));
+    }
+
+    @Test
+    void next_isStrictlyIncreasingInPostgresOrder() {
+        UUID prev = UuidV7.next();
+        // больше 4096 id за миллисекунду — проверяем и перенос счётчика
+        for (int i = 0; i < 100_000; i++) {
+            UUID id = UuidV7.next();
+            assertTrue(UuidOrder.COMPARATOR.compare(prev, id) < 0, prev + " !< " + id);
+            prev = id;
+        }
+    }
+
+    @Test
+    void next_isUniqueAcrossThreads() throws Exception {
+        Set<UUID> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    UUID prev = UuidV7.next();
+                    for (int i = 0; i < 20_000; i++) {
+                        UUID id = UuidV7.next();
+                        // в каждом потоке порядок тоже строго возрастающий
+                        assertTrue(UuidOrder.COMPARATOR.compare(prev, id) < 0);
+                        assertTrue(seen.add(id));
+                        prev = id;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(8 * 20_000, seen.size());
+    }
+}
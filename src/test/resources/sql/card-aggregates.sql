@@ -0,0 +1,22 @@
+-- таблицы агрегатов карт для H2-тестов (в приложении их создаёт changelog-020-card-aggregates)
+create table if not exists card_owner_totals (
+    owner_id uuid not null,
+    status varchar(20) not null,
+    card_count bigint default 0 not null,
+    balance numeric(19,2) default 0 not null,
+    primary key (owner_id, status)
+);
+
+create table if not exists card_global_totals (
+    status varchar(20) not null,
+    shard int not null,
+    card_count bigint default 0 not null,
+    balance numeric(19,2) default 0 not null,
+    primary key (status, shard)
+);
+
+insert into card_global_totals (status, shard, card_count, balance)
+select s.status, g.x, 0, 0
+from (values ('ACTIVE'), ('BLOCKED'), ('BLOCK_REQUESTED')) s(status)
+cross join system_range(0, 15) g
+where not exists (select 1 from card_global_totals t where t.status = s.status and t.shard = g.x);